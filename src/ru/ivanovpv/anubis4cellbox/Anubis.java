@@ -14,6 +14,15 @@
  *  limitations under the License. */
 
 package ru.ivanovpv.anubis4cellbox;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 /**
  * <b>The Anubis block cipher.</b>
  *
@@ -71,12 +80,12 @@ public final class Anubis
             "\ufed5\u31d9\u3518\u0264\uf2f1\u56cd\u82c8\ubaf0" +
             "\uefe9\ue8fd\u89d7\uc7b5\ua42f\u9513\u0bf3\ue037";
 
-    private static int[] T0 = new int[256];
-    private static int[] T1 = new int[256];
-    private static int[] T2 = new int[256];
-    private static int[] T3 = new int[256];
-    private static int[] T4 = new int[256];
-    private static int[] T5 = new int[256];
+    static final int[] T0 = new int[256];
+    static final int[] T1 = new int[256];
+    static final int[] T2 = new int[256];
+    static final int[] T3 = new int[256];
+    private static final int[] T4 = new int[256];
+    private static final int[] T5 = new int[256];
 
     ////////////////////////////////////////////////////////////////////////////
 
@@ -131,15 +140,34 @@ public final class Anubis
         }
     } // static
 
-    protected int[/*R + 1*/][/*4*/] roundKeyEnc = null;
-    protected int[/*R + 1*/][/*4*/] roundKeyDec = null;
+    protected int[/*4*(R + 1)*/] roundKeyEnc = null;
+    protected volatile int[/*4*(R + 1)*/] roundKeyDec = null; // built on first use, see decryptionKey()
+    private AnubisUnrolled unrolled; // crypt routines for R rounds, chosen at key setup
+    private boolean encryptOnly;
+    private int[] spareDec = null; // storage of a discarded decryption schedule, reused on rekey
+    private final int[] kappa = new int[10]; // key evolution scratch, N <= 10
+    private final int[] inter = new int[10];
 
     /**
      * Create the Anubis key schedule for a given cipher key.
      *
+     * Round key K^r occupies words 4*r .. 4*r + 3 of the flat schedule arrays.
+     * The decryption schedule is derived on first use.
+     *
      * @param key   The 32N-bit cipher key.
      */
     public final void keySetup(byte[/*4*N*/] key)
+    {
+        keySetup(key, false);
+    } // keySetup
+
+    /**
+     * Create the Anubis key schedule for a given cipher key.
+     *
+     * @param key           The 32N-bit cipher key.
+     * @param encryptOnly   if true the decryption schedule is never built and decryption is refused.
+     */
+    public final void keySetup(byte[/*4*N*/] key, boolean encryptOnly)
     {
 
         // determine the N length parameter:
@@ -148,16 +176,319 @@ public final class Anubis
         {
             throw new RuntimeException("Invalid Anubis key size: " + (32*N) + " bits.");
         }
-        int[] kappa = new int[N];
-        int[] inter = new int[N];
 
         // determine number of rounds from key size:
         int R = 8 + N;
-        roundKeyEnc = new int[R + 1][4];
-        roundKeyDec = new int[R + 1][4];
+        unrolled = AnubisUnrolled.forRounds(R);
+        this.encryptOnly = encryptOnly;
+
+        // rekeying with a key of the same size reuses the schedule storage:
+        int[] enc = roundKeyEnc;
+        if (enc == null || enc.length != 4*(R + 1))
+        {
+            enc = new int[4*(R + 1)];
+        }
+        int[] dec = roundKeyDec;
+        if (dec != null)
+        {
+            Arrays.fill(dec, 0);
+            spareDec = dec; // picked up again by decryptionKey()
+            roundKeyDec = null;
+        }
+        expandKey(key, 0, N, enc, 0, kappa, inter);
+        Arrays.fill(kappa, 0);
+        Arrays.fill(inter, 0);
+        roundKeyEnc = enc;
+
+    } // keySetup
+
+    /**
+     * Load the key schedule of this instance from a batch produced by
+     * {@link #expandKeys(byte[][], int[], int)}. No memory is allocated
+     * if this instance was last keyed with a key of the same size.
+     *
+     * @param schedules flat array of encryption key schedules.
+     * @param index     position of the wanted schedule in the batch.
+     * @param keyLength length of the cipher keys of the batch in bytes.
+     */
+    public final void keySetup(int[] schedules, int index, int keyLength)
+    {
+        int words = scheduleLength(keyLength);
+        int[] enc = roundKeyEnc;
+        if (enc == null || enc.length != words)
+        {
+            enc = new int[words];
+        }
+        int[] dec = roundKeyDec;
+        if (dec != null)
+        {
+            Arrays.fill(dec, 0);
+            spareDec = dec;
+            roundKeyDec = null;
+        }
+        System.arraycopy(schedules, index*words, enc, 0, words);
+        unrolled = AnubisUnrolled.forRounds((words >>> 2) - 1);
+        encryptOnly = false;
+        roundKeyEnc = enc;
+    } // keySetup
+
+    /**
+     * @param keyLength length of the cipher key in bytes.
+     * @return number of int words in the flat encryption key schedule of such a key.
+     */
+    public static int scheduleLength(int keyLength)
+    {
+        int N = keyLength/4;
+        if (N < 4 || N > 10)
+        {
+            throw new RuntimeException("Invalid Anubis key size: " + (32*N) + " bits.");
+        }
+        return 4*(N + 9);
+    } // scheduleLength
+
+    /**
+     * Expand several cipher keys of the same size into one flat array.
+     * Schedule i occupies words outOff + i*scheduleLength(keyLength) onwards,
+     * in the same layout as {@link #roundKeyEnc}, so the array can be used
+     * directly with {@link #encryptBlocks(int[], int, int, byte[], int, byte[], int, int)}.
+     * Keys are expanded two at a time with interleaved key evolution; large
+     * batches are split across the shared worker threads.
+     *
+     * @param keys      cipher keys, all of the same length.
+     * @param out       receives the encryption key schedules.
+     * @param outOff    offset of the first schedule in out.
+     */
+    public static void expandKeys(final byte[][] keys, final int[] out, final int outOff)
+    {
+        if (keys.length == 0)
+        {
+            return;
+        }
+        final int keyLength = keys[0].length;
+        final int words = scheduleLength(keyLength);
+        if (out.length - outOff < keys.length*words)
+        {
+            throw new RuntimeException("Key schedule buffer too small: " + out.length + " words.");
+        }
+        for (int i = 1; i < keys.length; i++)
+        {
+            if (keys[i].length/4 != keyLength/4)
+            {
+                throw new RuntimeException("Invalid Anubis key size: " + (8*keys[i].length) + " bits.");
+            }
+        }
+        int parts = Parallel.parts(keys.length, PARALLEL_KEYS);
+        Runnable[] tasks = new Runnable[parts];
+        for (int p = 0; p < parts; p++)
+        {
+            final int from = (int)((long)keys.length*p/parts);
+            final int to = (int)((long)keys.length*(p + 1)/parts);
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    expandKeys(keys, from, to, keyLength/4, out, outOff + from*words, words);
+                }
+            };
+        }
+        Parallel.invokeAll(tasks);
+    } // expandKeys
+
+    /**
+     * Encrypt consecutive 16-byte blocks with one schedule of a batch
+     * produced by {@link #expandKeys(byte[][], int[], int)}, without loading
+     * it into an instance.
+     *
+     * @param schedules flat array of encryption key schedules.
+     * @param index     position of the schedule in the batch.
+     * @param keyLength length of the cipher keys of the batch in bytes.
+     * @param src       buffer holding the plaintext blocks.
+     * @param srcOff    offset of the first block in src.
+     * @param dst       buffer receiving the ciphertext blocks, may be src.
+     * @param dstOff    offset of the first block in dst.
+     * @param nBlocks   number of blocks.
+     */
+    public static void encryptBlocks(int[] schedules, int index, int keyLength,
+                                     byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        int words = scheduleLength(keyLength);
+        cryptBlocks(src, srcOff, dst, dstOff, nBlocks, schedules, index*words, (words >>> 2) - 1);
+    } // encryptBlocks
+
+    /**
+     * Expand several cipher keys of the same size into a new flat array.
+     *
+     * @param keys      cipher keys, all of the same length.
+     * @return the encryption key schedules, see {@link #expandKeys(byte[][], int[], int)}.
+     */
+    public static int[] expandKeys(byte[][] keys)
+    {
+        int[] out = new int[(keys.length == 0) ? 0 : keys.length*scheduleLength(keys[0].length)];
+        expandKeys(keys, out, 0);
+        return out;
+    } // expandKeys
+
+    private static final int PARALLEL_KEYS = 512; // smallest batch worth a worker thread
+
+    private static void expandKeys(byte[][] keys, int from, int to, int N, int[] out, int outOff, int words)
+    {
+        int[] kappaA = new int[N], interA = new int[N], kappaB = new int[N], interB = new int[N];
+        int i = from;
+        for (; i + 1 < to; i += 2, outOff += 2*words)
+        {
+            expandKey2(keys[i], keys[i + 1], N, out, outOff, outOff + words, kappaA, interA, kappaB, interB);
+        }
+        if (i < to)
+        {
+            expandKey(keys[i], 0, N, out, outOff, kappaA, interA);
+        }
+        Arrays.fill(kappaA, 0);
+        Arrays.fill(interA, 0);
+        Arrays.fill(kappaB, 0);
+        Arrays.fill(interB, 0);
+    } // expandKeys
+
+    /**
+     * Expand two 32N-bit cipher keys at once, interleaving the key evolution
+     * steps of both so that their table lookups overlap.
+     *
+     * @param keyA      first cipher key.
+     * @param keyB      second cipher key.
+     * @param N         key length in 32-bit words, 4..10.
+     * @param out       receives both schedules.
+     * @param outA      offset of the first schedule in out.
+     * @param outB      offset of the second schedule in out.
+     */
+    static void expandKey2(byte[] keyA, byte[] keyB, int N, int[] out, int outA, int outB,
+                           int[] kappaA, int[] interA, int[] kappaB, int[] interB)
+    {
+        int R = 8 + N;
+
+        // map byte array cipher keys to initial key states (mu):
+        for (int i = 0, pos = 0; i < N; i++, pos += 4)
+        {
+            kappaA[i] =
+                    ((keyA[pos    ]       ) << 24) ^
+                    ((keyA[pos + 1] & 0xff) << 16) ^
+                    ((keyA[pos + 2] & 0xff) <<  8) ^
+                    ((keyA[pos + 3] & 0xff)      );
+            kappaB[i] =
+                    ((keyB[pos    ]       ) << 24) ^
+                    ((keyB[pos + 1] & 0xff) << 16) ^
+                    ((keyB[pos + 2] & 0xff) <<  8) ^
+                    ((keyB[pos + 3] & 0xff)      );
+        }
+
+        // generate R + 1 round keys for both:
+        for (int r = 0; r <= R; r++)
+        {
+            int A0 = T4[(kappaA[N - 1] >>> 24)       ];
+            int B0 = T4[(kappaB[N - 1] >>> 24)       ];
+            int A1 = T4[(kappaA[N - 1] >>> 16) & 0xff];
+            int B1 = T4[(kappaB[N - 1] >>> 16) & 0xff];
+            int A2 = T4[(kappaA[N - 1] >>>  8) & 0xff];
+            int B2 = T4[(kappaB[N - 1] >>>  8) & 0xff];
+            int A3 = T4[(kappaA[N - 1]       ) & 0xff];
+            int B3 = T4[(kappaB[N - 1]       ) & 0xff];
+            for (int t = N - 2; t >= 0; t--)
+            {
+                A0 = T4[(kappaA[t] >>> 24)       ] ^
+                        (T5[(A0 >>> 24)       ] & 0xff000000) ^
+                        (T5[(A0 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(A0 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(A0       ) & 0xff] & 0x000000ff);
+                B0 = T4[(kappaB[t] >>> 24)       ] ^
+                        (T5[(B0 >>> 24)       ] & 0xff000000) ^
+                        (T5[(B0 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(B0 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(B0       ) & 0xff] & 0x000000ff);
+                A1 = T4[(kappaA[t] >>> 16) & 0xff] ^
+                        (T5[(A1 >>> 24)       ] & 0xff000000) ^
+                        (T5[(A1 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(A1 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(A1       ) & 0xff] & 0x000000ff);
+                B1 = T4[(kappaB[t] >>> 16) & 0xff] ^
+                        (T5[(B1 >>> 24)       ] & 0xff000000) ^
+                        (T5[(B1 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(B1 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(B1       ) & 0xff] & 0x000000ff);
+                A2 = T4[(kappaA[t] >>>  8) & 0xff] ^
+                        (T5[(A2 >>> 24)       ] & 0xff000000) ^
+                        (T5[(A2 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(A2 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(A2       ) & 0xff] & 0x000000ff);
+                B2 = T4[(kappaB[t] >>>  8) & 0xff] ^
+                        (T5[(B2 >>> 24)       ] & 0xff000000) ^
+                        (T5[(B2 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(B2 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(B2       ) & 0xff] & 0x000000ff);
+                A3 = T4[(kappaA[t]        ) & 0xff] ^
+                        (T5[(A3 >>> 24)       ] & 0xff000000) ^
+                        (T5[(A3 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(A3 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(A3       ) & 0xff] & 0x000000ff);
+                B3 = T4[(kappaB[t]        ) & 0xff] ^
+                        (T5[(B3 >>> 24)       ] & 0xff000000) ^
+                        (T5[(B3 >>> 16) & 0xff] & 0x00ff0000) ^
+                        (T5[(B3 >>>  8) & 0xff] & 0x0000ff00) ^
+                        (T5[(B3       ) & 0xff] & 0x000000ff);
+            }
+            out[outA + 4*r    ] = A0;
+            out[outA + 4*r + 1] = A1;
+            out[outA + 4*r + 2] = A2;
+            out[outA + 4*r + 3] = A3;
+            out[outB + 4*r    ] = B0;
+            out[outB + 4*r + 1] = B1;
+            out[outB + 4*r + 2] = B2;
+            out[outB + 4*r + 3] = B3;
+
+            // compute kappa^{r+1} from kappa^r:
+            for (int i = 0; i < N; i++)
+            {
+                int i1 = (N + i - 1) % N, i2 = (N + i - 2) % N, i3 = (N + i - 3) % N;
+                interA[i] =
+                        T0[(kappaA[i ] >>> 24)       ] ^
+                        T1[(kappaA[i1] >>> 16) & 0xff] ^
+                        T2[(kappaA[i2] >>>  8) & 0xff] ^
+                        T3[(kappaA[i3]       ) & 0xff];
+                interB[i] =
+                        T0[(kappaB[i ] >>> 24)       ] ^
+                        T1[(kappaB[i1] >>> 16) & 0xff] ^
+                        T2[(kappaB[i2] >>>  8) & 0xff] ^
+                        T3[(kappaB[i3]       ) & 0xff];
+            }
+            int c =
+                    (T0[4*r    ] & 0xff000000) ^
+                    (T1[4*r + 1] & 0x00ff0000) ^
+                    (T2[4*r + 2] & 0x0000ff00) ^
+                    (T3[4*r + 3] & 0x000000ff);
+            kappaA[0] = c ^ interA[0];
+            kappaB[0] = c ^ interB[0];
+            for (int i = 1; i < N; i++)
+            {
+                kappaA[i] = interA[i];
+                kappaB[i] = interB[i];
+            }
+        }
+    } // expandKey2
+
+    /**
+     * Expand one 32N-bit cipher key into its flat encryption key schedule.
+     *
+     * @param key       cipher key material.
+     * @param keyOff    offset of the key in key.
+     * @param N         key length in 32-bit words, 4..10.
+     * @param out       receives the 4*(N + 9) words of the schedule.
+     * @param outOff    offset of the schedule in out.
+     * @param kappa     scratch for the key state, at least N words.
+     * @param inter     scratch for the key state, at least N words.
+     */
+    static void expandKey(byte[] key, int keyOff, int N, int[] out, int outOff, int[] kappa, int[] inter)
+    {
+        int R = 8 + N;
 
         // map byte array cipher key to initial key state (mu):
-        for (int i = 0, pos = 0; i < N; i++)
+        for (int i = 0, pos = keyOff; i < N; i++)
         {
             kappa[i] =
                     ((key[pos++]       ) << 24) ^
@@ -200,10 +531,10 @@ public final class Anubis
                         (T5[(K3 >>>  8) & 0xff] & 0x0000ff00) ^
                         (T5[(K3       ) & 0xff] & 0x000000ff);
             }
-            roundKeyEnc[r][0] = K0;
-            roundKeyEnc[r][1] = K1;
-            roundKeyEnc[r][2] = K2;
-            roundKeyEnc[r][3] = K3;
+            out[outOff + 4*r    ] = K0;
+            out[outOff + 4*r + 1] = K1;
+            out[outOff + 4*r + 2] = K2;
+            out[outOff + 4*r + 3] = K3;
 
                         /*
                          * compute kappa^{r+1} from kappa^r:
@@ -227,126 +558,698 @@ public final class Anubis
                 kappa[i] = inter[i];
             }
         }
+    } // expandKey
 
-        // generate inverse key schedule: K'^0 = K^R, K'^R = K^0, K'^r = theta(K^{R-r}):
+    /**
+     * Generate the inverse key schedule: K'^0 = K^R, K'^R = K^0, K'^r = theta(K^{R-r}).
+     *
+     * @param roundKeyEnc   the flat encryption key schedule.
+     * @param roundKeyDec   receives the flat decryption key schedule (same length).
+     */
+    static void inverseKey(int[/*4*(R + 1)*/] roundKeyEnc, int[/*4*(R + 1)*/] roundKeyDec)
+    {
+        int R = (roundKeyEnc.length >>> 2) - 1; // number of rounds
         for (int i = 0; i < 4; i++)
         {
-            roundKeyDec[0][i] = roundKeyEnc[R][i];
-            roundKeyDec[R][i] = roundKeyEnc[0][i];
+            roundKeyDec[i] = roundKeyEnc[4*R + i];
+            roundKeyDec[4*R + i] = roundKeyEnc[i];
         }
         for (int r = 1; r < R; r++)
         {
             for (int i = 0; i < 4; i++)
             {
-                int v = roundKeyEnc[R - r][i];
-                roundKeyDec[r][i] =
+                int v = roundKeyEnc[4*(R - r) + i];
+                roundKeyDec[4*r + i] =
                         T0[T4[(v >>> 24)       ] & 0xff] ^
                         T1[T4[(v >>> 16) & 0xff] & 0xff] ^
                         T2[T4[(v >>>  8) & 0xff] & 0xff] ^
                         T3[T4[(v       ) & 0xff] & 0xff];
             }
         }
+    } // inverseKey
+
+    /**
+     * Get the decryption key schedule, building it on first use.
+     * Safe to call from several threads: the schedule is built once and
+     * published through a volatile field.
+     *
+     * @return the flat decryption key schedule.
+     */
+    final int[/*4*(R + 1)*/] decryptionKey()
+    {
+        int[] dec = roundKeyDec;
+        if (dec == null)
+        {
+            synchronized (this)
+            {
+                dec = roundKeyDec;
+                if (dec == null)
+                {
+                    if (encryptOnly)
+                    {
+                        throw new RuntimeException("Anubis key schedule is encrypt-only.");
+                    }
+                    dec = spareDec;
+                    if (dec == null || dec.length != roundKeyEnc.length)
+                    {
+                        dec = new int[roundKeyEnc.length];
+                    }
+                    spareDec = null;
+                    inverseKey(roundKeyEnc, dec);
+                    roundKeyDec = dec;
+                }
+            }
+        }
+        return dec;
+    } // decryptionKey
+
+    /**
+     * @return true if this instance was keyed for encryption only.
+     */
+    public final boolean isEncryptOnly()
+    {
+        return encryptOnly;
+    }
+
+    /**
+     * Take over a copy of the key schedule of another (keyed) instance.
+     *
+     * @param anubis    keyed Anubis instance
+     */
+    final void keySetup(Anubis anubis)
+    {
+        int[] dec = anubis.roundKeyDec;
+        roundKeyEnc = anubis.roundKeyEnc.clone();
+        roundKeyDec = (dec != null) ? dec.clone() : null;
+        unrolled = anubis.unrolled;
+        encryptOnly = anubis.encryptOnly;
     } // keySetup
 
+    /**
+     * Overwrite the key schedule of this instance with zeros.
+     * Only this instance is affected, the shared lookup tables are never touched.
+     */
+    public final void clean()
+    {
+        if (roundKeyEnc != null)
+        {
+            Arrays.fill(roundKeyEnc, 0);
+        }
+        int[] dec = roundKeyDec;
+        if (dec != null)
+        {
+            Arrays.fill(dec, 0);
+        }
+        if (spareDec != null)
+        {
+            Arrays.fill(spareDec, 0);
+        }
+    } // clean
+
+    /**
+     * Either encrypt or decrypt a data block, according to the key schedule.
+     * The cipher state is kept in local variables, so no memory is allocated.
+     * Input and output may refer to the same (or overlapping) region.
+     *
+     * @param	in			buffer holding the input block.
+     * @param	inOff		offset of the input block in <code>in</code>.
+     * @param	out			buffer receiving the output block.
+     * @param	outOff		offset of the output block in <code>out</code>.
+     * @param	roundKey	the flat key schedule to be used.
+     */
+    protected static void crypt(byte[] in, int inOff, byte[] out, int outOff, int[/*4*(R + 1)*/] roundKey)
+    {
+        crypt(in, inOff, out, outOff, roundKey, 0, (roundKey.length >>> 2) - 1);
+    } // crypt
+
     /**
      * Either encrypt or decrypt a data block, according to the key schedule.
+     * The cipher state is kept in local variables, so no memory is allocated.
+     * Input and output may refer to the same (or overlapping) region.
      *
-     * @param	block		the data block to be encrypted/decrypted.
-     * @param	roundKey	the key schedule to be used.
+     * @param	in			buffer holding the input block.
+     * @param	inOff		offset of the input block in <code>in</code>.
+     * @param	out			buffer receiving the output block.
+     * @param	outOff		offset of the output block in <code>out</code>.
+     * @param	roundKey	the flat key schedule to be used.
+     * @param	keyOff		offset of the schedule in <code>roundKey</code>.
+     * @param	R			number of rounds of the schedule.
      */
-    protected final void crypt(byte[/*16*/] block, int[/*R + 1*/][/*4*/] roundKey)
+    static void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] roundKey, int keyOff, int R)
     {
-        int[] state = new int[4];
-        int[] inter = new int[4];
-        int R = roundKey.length - 1; // number of rounds
+        int s0, s1, s2, s3, t0, t1, t2, t3;
 
         /*
          * map byte array block to cipher state (mu)
          * and add initial round key (sigma[K^0]):
          */
-        for (int i = 0, pos = 0; i < 4; i++)
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                roundKey[keyOff];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                roundKey[keyOff + 1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                roundKey[keyOff + 2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                roundKey[keyOff + 3];
+
+        // R - 1 full rounds:
+        for (int r = 1, k = keyOff + 4; r < R; r++, k += 4)
+        {
+            t0 =
+                    T0[(s0 >>> 24)       ] ^
+                    T1[(s1 >>> 24)       ] ^
+                    T2[(s2 >>> 24)       ] ^
+                    T3[(s3 >>> 24)       ] ^
+                    roundKey[k    ];
+            t1 =
+                    T0[(s0 >>> 16) & 0xff] ^
+                    T1[(s1 >>> 16) & 0xff] ^
+                    T2[(s2 >>> 16) & 0xff] ^
+                    T3[(s3 >>> 16) & 0xff] ^
+                    roundKey[k + 1];
+            t2 =
+                    T0[(s0 >>>  8) & 0xff] ^
+                    T1[(s1 >>>  8) & 0xff] ^
+                    T2[(s2 >>>  8) & 0xff] ^
+                    T3[(s3 >>>  8) & 0xff] ^
+                    roundKey[k + 2];
+            t3 =
+                    T0[(s0       ) & 0xff] ^
+                    T1[(s1       ) & 0xff] ^
+                    T2[(s2       ) & 0xff] ^
+                    T3[(s3       ) & 0xff] ^
+                    roundKey[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+        }
+
+        /*
+         * last round:
+         */
+        t0 =
+                (T0[(s0 >>> 24)       ] & 0xff000000) ^
+                (T1[(s1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(s2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(s3 >>> 24)       ] & 0x000000ff) ^
+                roundKey[keyOff + 4*R    ];
+        t1 =
+                (T0[(s0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>> 16) & 0xff] & 0x000000ff) ^
+                roundKey[keyOff + 4*R + 1];
+        t2 =
+                (T0[(s0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>>  8) & 0xff] & 0x000000ff) ^
+                roundKey[keyOff + 4*R + 2];
+        t3 =
+                (T0[(s0       ) & 0xff] & 0xff000000) ^
+                (T1[(s1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(s2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(s3       ) & 0xff] & 0x000000ff) ^
+                roundKey[keyOff + 4*R + 3];
+
+        // map cipher state to byte array block (mu^{-1}):
+        out[outOff     ] = (byte)(t0 >>> 24);
+        out[outOff +  1] = (byte)(t0 >>> 16);
+        out[outOff +  2] = (byte)(t0 >>>  8);
+        out[outOff +  3] = (byte)(t0       );
+        out[outOff +  4] = (byte)(t1 >>> 24);
+        out[outOff +  5] = (byte)(t1 >>> 16);
+        out[outOff +  6] = (byte)(t1 >>>  8);
+        out[outOff +  7] = (byte)(t1       );
+        out[outOff +  8] = (byte)(t2 >>> 24);
+        out[outOff +  9] = (byte)(t2 >>> 16);
+        out[outOff + 10] = (byte)(t2 >>>  8);
+        out[outOff + 11] = (byte)(t2       );
+        out[outOff + 12] = (byte)(t3 >>> 24);
+        out[outOff + 13] = (byte)(t3 >>> 16);
+        out[outOff + 14] = (byte)(t3 >>>  8);
+        out[outOff + 15] = (byte)(t3       );
+
+    } // crypt
+
+    /**
+     * Either encrypt or decrypt two adjacent data blocks, according to the key schedule.
+     * The two blocks are independent and are pushed through the rounds side by side,
+     * so the table lookups of one block overlap those of the other.
+     *
+     * @param	in			buffer holding the two input blocks.
+     * @param	inOff		offset of the first input block in <code>in</code>.
+     * @param	out			buffer receiving the two output blocks.
+     * @param	outOff		offset of the first output block in <code>out</code>.
+     * @param	roundKey	the flat key schedule to be used.
+     */
+    protected static void crypt2(byte[] in, int inOff, byte[] out, int outOff, int[/*4*(R + 1)*/] roundKey)
+    {
+        crypt2(in, inOff, out, outOff, roundKey, 0, (roundKey.length >>> 2) - 1);
+    } // crypt2
+
+    /**
+     * Either encrypt or decrypt two adjacent data blocks, according to the key schedule.
+     * The two blocks are independent and are pushed through the rounds side by side,
+     * so the table lookups of one block overlap those of the other.
+     *
+     * @param	in			buffer holding the two input blocks.
+     * @param	inOff		offset of the first input block in <code>in</code>.
+     * @param	out			buffer receiving the two output blocks.
+     * @param	outOff		offset of the first output block in <code>out</code>.
+     * @param	roundKey	the flat key schedule to be used.
+     * @param	keyOff		offset of the schedule in <code>roundKey</code>.
+     * @param	R			number of rounds of the schedule.
+     */
+    static void crypt2(byte[] in, int inOff, byte[] out, int outOff, int[] roundKey, int keyOff, int R)
+    {
+        int a0, a1, a2, a3, b0, b1, b2, b3;
+        int u0, u1, u2, u3, v0, v1, v2, v3;
+        int k0 = roundKey[keyOff], k1 = roundKey[keyOff + 1], k2 = roundKey[keyOff + 2], k3 = roundKey[keyOff + 3];
+
+        /*
+         * map byte array blocks to cipher states (mu)
+         * and add initial round key (sigma[K^0]):
+         */
+        a0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^ k0;
+        a1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^ k1;
+        a2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^ k2;
+        a3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^ k3;
+        b0 =
+                ((in[inOff + 16]       ) << 24) ^
+                ((in[inOff + 17] & 0xff) << 16) ^
+                ((in[inOff + 18] & 0xff) <<  8) ^
+                ((in[inOff + 19] & 0xff)      ) ^ k0;
+        b1 =
+                ((in[inOff + 20]       ) << 24) ^
+                ((in[inOff + 21] & 0xff) << 16) ^
+                ((in[inOff + 22] & 0xff) <<  8) ^
+                ((in[inOff + 23] & 0xff)      ) ^ k1;
+        b2 =
+                ((in[inOff + 24]       ) << 24) ^
+                ((in[inOff + 25] & 0xff) << 16) ^
+                ((in[inOff + 26] & 0xff) <<  8) ^
+                ((in[inOff + 27] & 0xff)      ) ^ k2;
+        b3 =
+                ((in[inOff + 28]       ) << 24) ^
+                ((in[inOff + 29] & 0xff) << 16) ^
+                ((in[inOff + 30] & 0xff) <<  8) ^
+                ((in[inOff + 31] & 0xff)      ) ^ k3;
+
+        // R - 1 full rounds:
+        for (int r = 1, k = keyOff + 4; r < R; r++, k += 4)
         {
-            state[i] =
-                    ((block[pos++]       ) << 24) ^
-                    ((block[pos++] & 0xff) << 16) ^
-                    ((block[pos++] & 0xff) <<  8) ^
-                    ((block[pos++] & 0xff)      ) ^
-                    roundKey[0][i];
+            k0 = roundKey[k    ];
+            k1 = roundKey[k + 1];
+            k2 = roundKey[k + 2];
+            k3 = roundKey[k + 3];
+            u0 = T0[(a0 >>> 24)       ] ^ T1[(a1 >>> 24)       ] ^ T2[(a2 >>> 24)       ] ^ T3[(a3 >>> 24)       ] ^ k0;
+            v0 = T0[(b0 >>> 24)       ] ^ T1[(b1 >>> 24)       ] ^ T2[(b2 >>> 24)       ] ^ T3[(b3 >>> 24)       ] ^ k0;
+            u1 = T0[(a0 >>> 16) & 0xff] ^ T1[(a1 >>> 16) & 0xff] ^ T2[(a2 >>> 16) & 0xff] ^ T3[(a3 >>> 16) & 0xff] ^ k1;
+            v1 = T0[(b0 >>> 16) & 0xff] ^ T1[(b1 >>> 16) & 0xff] ^ T2[(b2 >>> 16) & 0xff] ^ T3[(b3 >>> 16) & 0xff] ^ k1;
+            u2 = T0[(a0 >>>  8) & 0xff] ^ T1[(a1 >>>  8) & 0xff] ^ T2[(a2 >>>  8) & 0xff] ^ T3[(a3 >>>  8) & 0xff] ^ k2;
+            v2 = T0[(b0 >>>  8) & 0xff] ^ T1[(b1 >>>  8) & 0xff] ^ T2[(b2 >>>  8) & 0xff] ^ T3[(b3 >>>  8) & 0xff] ^ k2;
+            u3 = T0[(a0       ) & 0xff] ^ T1[(a1       ) & 0xff] ^ T2[(a2       ) & 0xff] ^ T3[(a3       ) & 0xff] ^ k3;
+            v3 = T0[(b0       ) & 0xff] ^ T1[(b1       ) & 0xff] ^ T2[(b2       ) & 0xff] ^ T3[(b3       ) & 0xff] ^ k3;
+            a0 = u0; a1 = u1; a2 = u2; a3 = u3;
+            b0 = v0; b1 = v1; b2 = v2; b3 = v3;
         }
 
+        /*
+         * last round:
+         */
+        k0 = roundKey[keyOff + 4*R    ];
+        k1 = roundKey[keyOff + 4*R + 1];
+        k2 = roundKey[keyOff + 4*R + 2];
+        k3 = roundKey[keyOff + 4*R + 3];
+        u0 = (T0[(a0 >>> 24)       ] & 0xff000000) ^ (T1[(a1 >>> 24)       ] & 0x00ff0000) ^
+             (T2[(a2 >>> 24)       ] & 0x0000ff00) ^ (T3[(a3 >>> 24)       ] & 0x000000ff) ^ k0;
+        v0 = (T0[(b0 >>> 24)       ] & 0xff000000) ^ (T1[(b1 >>> 24)       ] & 0x00ff0000) ^
+             (T2[(b2 >>> 24)       ] & 0x0000ff00) ^ (T3[(b3 >>> 24)       ] & 0x000000ff) ^ k0;
+        u1 = (T0[(a0 >>> 16) & 0xff] & 0xff000000) ^ (T1[(a1 >>> 16) & 0xff] & 0x00ff0000) ^
+             (T2[(a2 >>> 16) & 0xff] & 0x0000ff00) ^ (T3[(a3 >>> 16) & 0xff] & 0x000000ff) ^ k1;
+        v1 = (T0[(b0 >>> 16) & 0xff] & 0xff000000) ^ (T1[(b1 >>> 16) & 0xff] & 0x00ff0000) ^
+             (T2[(b2 >>> 16) & 0xff] & 0x0000ff00) ^ (T3[(b3 >>> 16) & 0xff] & 0x000000ff) ^ k1;
+        u2 = (T0[(a0 >>>  8) & 0xff] & 0xff000000) ^ (T1[(a1 >>>  8) & 0xff] & 0x00ff0000) ^
+             (T2[(a2 >>>  8) & 0xff] & 0x0000ff00) ^ (T3[(a3 >>>  8) & 0xff] & 0x000000ff) ^ k2;
+        v2 = (T0[(b0 >>>  8) & 0xff] & 0xff000000) ^ (T1[(b1 >>>  8) & 0xff] & 0x00ff0000) ^
+             (T2[(b2 >>>  8) & 0xff] & 0x0000ff00) ^ (T3[(b3 >>>  8) & 0xff] & 0x000000ff) ^ k2;
+        u3 = (T0[(a0       ) & 0xff] & 0xff000000) ^ (T1[(a1       ) & 0xff] & 0x00ff0000) ^
+             (T2[(a2       ) & 0xff] & 0x0000ff00) ^ (T3[(a3       ) & 0xff] & 0x000000ff) ^ k3;
+        v3 = (T0[(b0       ) & 0xff] & 0xff000000) ^ (T1[(b1       ) & 0xff] & 0x00ff0000) ^
+             (T2[(b2       ) & 0xff] & 0x0000ff00) ^ (T3[(b3       ) & 0xff] & 0x000000ff) ^ k3;
+
+        // map cipher states to byte array blocks (mu^{-1}):
+        out[outOff     ] = (byte)(u0 >>> 24);
+        out[outOff +  1] = (byte)(u0 >>> 16);
+        out[outOff +  2] = (byte)(u0 >>>  8);
+        out[outOff +  3] = (byte)(u0       );
+        out[outOff +  4] = (byte)(u1 >>> 24);
+        out[outOff +  5] = (byte)(u1 >>> 16);
+        out[outOff +  6] = (byte)(u1 >>>  8);
+        out[outOff +  7] = (byte)(u1       );
+        out[outOff +  8] = (byte)(u2 >>> 24);
+        out[outOff +  9] = (byte)(u2 >>> 16);
+        out[outOff + 10] = (byte)(u2 >>>  8);
+        out[outOff + 11] = (byte)(u2       );
+        out[outOff + 12] = (byte)(u3 >>> 24);
+        out[outOff + 13] = (byte)(u3 >>> 16);
+        out[outOff + 14] = (byte)(u3 >>>  8);
+        out[outOff + 15] = (byte)(u3       );
+        out[outOff + 16] = (byte)(v0 >>> 24);
+        out[outOff + 17] = (byte)(v0 >>> 16);
+        out[outOff + 18] = (byte)(v0 >>>  8);
+        out[outOff + 19] = (byte)(v0       );
+        out[outOff + 20] = (byte)(v1 >>> 24);
+        out[outOff + 21] = (byte)(v1 >>> 16);
+        out[outOff + 22] = (byte)(v1 >>>  8);
+        out[outOff + 23] = (byte)(v1       );
+        out[outOff + 24] = (byte)(v2 >>> 24);
+        out[outOff + 25] = (byte)(v2 >>> 16);
+        out[outOff + 26] = (byte)(v2 >>>  8);
+        out[outOff + 27] = (byte)(v2       );
+        out[outOff + 28] = (byte)(v3 >>> 24);
+        out[outOff + 29] = (byte)(v3 >>> 16);
+        out[outOff + 30] = (byte)(v3 >>>  8);
+        out[outOff + 31] = (byte)(v3       );
+
+    } // crypt2
+
+    /**
+     * Either encrypt or decrypt a run of consecutive data blocks, according to the key schedule.
+     * Blocks are processed in pairs; an odd trailing block goes through the single block core.
+     *
+     * @param	src			buffer holding the input blocks.
+     * @param	srcOff		offset of the first input block in <code>src</code>.
+     * @param	dst			buffer receiving the output blocks.
+     * @param	dstOff		offset of the first output block in <code>dst</code>.
+     * @param	nBlocks		number of 16-byte blocks to process.
+     * @param	roundKey	the flat key schedule to be used.
+     */
+    protected static void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[/*4*(R + 1)*/] roundKey)
+    {
+        cryptBlocks(src, srcOff, dst, dstOff, nBlocks, roundKey, 0, (roundKey.length >>> 2) - 1);
+    } // cryptBlocks
+
+    static void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] roundKey, int keyOff, int R)
+    {
+        for (; nBlocks >= 2; nBlocks -= 2, srcOff += 32, dstOff += 32)
+        {
+            crypt2(src, srcOff, dst, dstOff, roundKey, keyOff, R);
+        }
+        if (nBlocks > 0)
+        {
+            crypt(src, srcOff, dst, dstOff, roundKey, keyOff, R);
+        }
+    } // cryptBlocks
+
+    /**
+     * Either encrypt or decrypt a data block held in a (heap or direct) byte buffer,
+     * according to the key schedule. Words are read and written with absolute
+     * <code>getInt</code>/<code>putInt</code>, so buffer positions are left untouched
+     * and nothing is copied or allocated.
+     *
+     * @param	in			buffer holding the input block.
+     * @param	inPos		absolute position of the input block in <code>in</code>.
+     * @param	out			buffer receiving the output block.
+     * @param	outPos		absolute position of the output block in <code>out</code>.
+     * @param	roundKey	the flat key schedule to be used.
+     */
+    protected static void crypt(ByteBuffer in, int inPos, ByteBuffer out, int outPos, int[/*4*(R + 1)*/] roundKey)
+    {
+        int R = (roundKey.length >>> 2) - 1; // number of rounds
+        boolean swapIn = in.order() != ByteOrder.BIG_ENDIAN;
+        boolean swapOut = out.order() != ByteOrder.BIG_ENDIAN;
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // map buffer block to cipher state (mu) and add initial round key (sigma[K^0]):
+        s0 = in.getInt(inPos     );
+        s1 = in.getInt(inPos +  4);
+        s2 = in.getInt(inPos +  8);
+        s3 = in.getInt(inPos + 12);
+        if (swapIn)
+        {
+            s0 = Integer.reverseBytes(s0);
+            s1 = Integer.reverseBytes(s1);
+            s2 = Integer.reverseBytes(s2);
+            s3 = Integer.reverseBytes(s3);
+        }
+        s0 ^= roundKey[0];
+        s1 ^= roundKey[1];
+        s2 ^= roundKey[2];
+        s3 ^= roundKey[3];
+
         // R - 1 full rounds:
-        for (int r = 1; r < R; r++)
+        for (int r = 1, k = 4; r < R; r++, k += 4)
         {
-            inter[0] =
-                    T0[(state[0] >>> 24)       ] ^
-                    T1[(state[1] >>> 24)       ] ^
-                    T2[(state[2] >>> 24)       ] ^
-                    T3[(state[3] >>> 24)       ] ^
-                    roundKey[r][0];
-            inter[1] =
-                    T0[(state[0] >>> 16) & 0xff] ^
-                    T1[(state[1] >>> 16) & 0xff] ^
-                    T2[(state[2] >>> 16) & 0xff] ^
-                    T3[(state[3] >>> 16) & 0xff] ^
-                    roundKey[r][1];
-            inter[2] =
-                    T0[(state[0] >>>  8) & 0xff] ^
-                    T1[(state[1] >>>  8) & 0xff] ^
-                    T2[(state[2] >>>  8) & 0xff] ^
-                    T3[(state[3] >>>  8) & 0xff] ^
-                    roundKey[r][2];
-            inter[3] =
-                    T0[(state[0]       ) & 0xff] ^
-                    T1[(state[1]       ) & 0xff] ^
-                    T2[(state[2]       ) & 0xff] ^
-                    T3[(state[3]       ) & 0xff] ^
-                    roundKey[r][3];
-            for (int i = 0; i < 4; i++)
-            {
-                state[i] = inter[i];
-            }
+            t0 =
+                    T0[(s0 >>> 24)       ] ^
+                    T1[(s1 >>> 24)       ] ^
+                    T2[(s2 >>> 24)       ] ^
+                    T3[(s3 >>> 24)       ] ^
+                    roundKey[k    ];
+            t1 =
+                    T0[(s0 >>> 16) & 0xff] ^
+                    T1[(s1 >>> 16) & 0xff] ^
+                    T2[(s2 >>> 16) & 0xff] ^
+                    T3[(s3 >>> 16) & 0xff] ^
+                    roundKey[k + 1];
+            t2 =
+                    T0[(s0 >>>  8) & 0xff] ^
+                    T1[(s1 >>>  8) & 0xff] ^
+                    T2[(s2 >>>  8) & 0xff] ^
+                    T3[(s3 >>>  8) & 0xff] ^
+                    roundKey[k + 2];
+            t3 =
+                    T0[(s0       ) & 0xff] ^
+                    T1[(s1       ) & 0xff] ^
+                    T2[(s2       ) & 0xff] ^
+                    T3[(s3       ) & 0xff] ^
+                    roundKey[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
         }
 
         /*
          * last round:
          */
-        inter[0] =
-                (T0[(state[0] >>> 24)       ] & 0xff000000) ^
-                (T1[(state[1] >>> 24)       ] & 0x00ff0000) ^
-                (T2[(state[2] >>> 24)       ] & 0x0000ff00) ^
-                (T3[(state[3] >>> 24)       ] & 0x000000ff) ^
-                roundKey[R][0];
-        inter[1] =
-                (T0[(state[0] >>> 16) & 0xff] & 0xff000000) ^
-                (T1[(state[1] >>> 16) & 0xff] & 0x00ff0000) ^
-                (T2[(state[2] >>> 16) & 0xff] & 0x0000ff00) ^
-                (T3[(state[3] >>> 16) & 0xff] & 0x000000ff) ^
-                roundKey[R][1];
-        inter[2] =
-                (T0[(state[0] >>>  8) & 0xff] & 0xff000000) ^
-                (T1[(state[1] >>>  8) & 0xff] & 0x00ff0000) ^
-                (T2[(state[2] >>>  8) & 0xff] & 0x0000ff00) ^
-                (T3[(state[3] >>>  8) & 0xff] & 0x000000ff) ^
-                roundKey[R][2];
-        inter[3] =
-                (T0[(state[0]       ) & 0xff] & 0xff000000) ^
-                (T1[(state[1]       ) & 0xff] & 0x00ff0000) ^
-                (T2[(state[2]       ) & 0xff] & 0x0000ff00) ^
-                (T3[(state[3]       ) & 0xff] & 0x000000ff) ^
-                roundKey[R][3];
+        t0 =
+                (T0[(s0 >>> 24)       ] & 0xff000000) ^
+                (T1[(s1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(s2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(s3 >>> 24)       ] & 0x000000ff) ^
+                roundKey[4*R    ];
+        t1 =
+                (T0[(s0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>> 16) & 0xff] & 0x000000ff) ^
+                roundKey[4*R + 1];
+        t2 =
+                (T0[(s0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>>  8) & 0xff] & 0x000000ff) ^
+                roundKey[4*R + 2];
+        t3 =
+                (T0[(s0       ) & 0xff] & 0xff000000) ^
+                (T1[(s1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(s2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(s3       ) & 0xff] & 0x000000ff) ^
+                roundKey[4*R + 3];
 
-        // map cipher state to byte array block (mu^{-1}):
-        for (int i = 0, pos = 0; i < 4; i++)
+        // map cipher state to buffer block (mu^{-1}):
+        if (swapOut)
         {
-            int w = inter[i];
-            block[pos++] = (byte)(w >>> 24);
-            block[pos++] = (byte)(w >>> 16);
-            block[pos++] = (byte)(w >>>  8);
-            block[pos++] = (byte)(w       );
+            t0 = Integer.reverseBytes(t0);
+            t1 = Integer.reverseBytes(t1);
+            t2 = Integer.reverseBytes(t2);
+            t3 = Integer.reverseBytes(t3);
         }
+        out.putInt(outPos     , t0);
+        out.putInt(outPos +  4, t1);
+        out.putInt(outPos +  8, t2);
+        out.putInt(outPos + 12, t3);
 
     } // crypt
 
+    /**
+     * Either encrypt or decrypt a run of consecutive data blocks held in byte buffers.
+     * When both buffers are backed by accessible arrays the byte array bulk path is used,
+     * otherwise (direct or read-only buffers) blocks are processed in place through
+     * absolute int access.
+     *
+     * @param	src			buffer holding the input blocks.
+     * @param	srcPos		absolute position of the first input block in <code>src</code>.
+     * @param	dst			buffer receiving the output blocks.
+     * @param	dstPos		absolute position of the first output block in <code>dst</code>.
+     * @param	nBlocks		number of 16-byte blocks to process.
+     * @param	roundKey	the flat key schedule to be used.
+     */
+    protected final void cryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks, int[/*4*(R + 1)*/] roundKey)
+    {
+        if (src.hasArray() && dst.hasArray())
+        {
+            unrolled.cryptBlocks(src.array(), src.arrayOffset() + srcPos, dst.array(), dst.arrayOffset() + dstPos, nBlocks, roundKey);
+            return;
+        }
+        for (; nBlocks > 0; nBlocks--, srcPos += 16, dstPos += 16)
+        {
+            crypt(src, srcPos, dst, dstPos, roundKey);
+        }
+    } // cryptBlocks
+
+    /**
+     * Encrypt a data block taken from <code>in</code> at <code>inOff</code>
+     * into <code>out</code> at <code>outOff</code>.
+     *
+     * @param	in		buffer holding the plaintext block.
+     * @param	inOff	offset of the plaintext block.
+     * @param	out		buffer receiving the ciphertext block (may be <code>in</code>).
+     * @param	outOff	offset of the ciphertext block.
+     */
+    public final void encryptBlock(byte[] in, int inOff, byte[] out, int outOff)
+    {
+        unrolled.crypt(in, inOff, out, outOff, roundKeyEnc);
+    } // encryptBlock
+
+    /**
+     * Decrypt a data block taken from <code>in</code> at <code>inOff</code>
+     * into <code>out</code> at <code>outOff</code>.
+     *
+     * @param	in		buffer holding the ciphertext block.
+     * @param	inOff	offset of the ciphertext block.
+     * @param	out		buffer receiving the plaintext block (may be <code>in</code>).
+     * @param	outOff	offset of the plaintext block.
+     */
+    public final void decryptBlock(byte[] in, int inOff, byte[] out, int outOff)
+    {
+        unrolled.crypt(in, inOff, out, outOff, decryptionKey());
+    } // decryptBlock
+
+    /**
+     * Encrypt <code>nBlocks</code> consecutive data blocks.
+     * <code>src</code> and <code>dst</code> may be the same array at the same offset.
+     *
+     * @param	src		buffer holding the plaintext blocks.
+     * @param	srcOff	offset of the first plaintext block.
+     * @param	dst		buffer receiving the ciphertext blocks.
+     * @param	dstOff	offset of the first ciphertext block.
+     * @param	nBlocks	number of 16-byte blocks to encrypt.
+     */
+    public final void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        unrolled.cryptBlocks(src, srcOff, dst, dstOff, nBlocks, roundKeyEnc);
+    } // encryptBlocks
+
+    /**
+     * Decrypt <code>nBlocks</code> consecutive data blocks.
+     * <code>src</code> and <code>dst</code> may be the same array at the same offset.
+     *
+     * @param	src		buffer holding the ciphertext blocks.
+     * @param	srcOff	offset of the first ciphertext block.
+     * @param	dst		buffer receiving the plaintext blocks.
+     * @param	dstOff	offset of the first plaintext block.
+     * @param	nBlocks	number of 16-byte blocks to decrypt.
+     */
+    public final void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        unrolled.cryptBlocks(src, srcOff, dst, dstOff, nBlocks, decryptionKey());
+    } // decryptBlocks
+
+    /**
+     * Encrypt a data block held in a byte buffer, heap or direct.
+     * Positions are absolute; the positions and limits of the buffers are not changed.
+     *
+     * @param	in		buffer holding the plaintext block.
+     * @param	inPos	absolute position of the plaintext block.
+     * @param	out		buffer receiving the ciphertext block (may be <code>in</code>).
+     * @param	outPos	absolute position of the ciphertext block.
+     */
+    public final void encryptBlock(ByteBuffer in, int inPos, ByteBuffer out, int outPos)
+    {
+        cryptBlocks(in, inPos, out, outPos, 1, roundKeyEnc);
+    } // encryptBlock
+
+    /**
+     * Decrypt a data block held in a byte buffer, heap or direct.
+     * Positions are absolute; the positions and limits of the buffers are not changed.
+     *
+     * @param	in		buffer holding the ciphertext block.
+     * @param	inPos	absolute position of the ciphertext block.
+     * @param	out		buffer receiving the plaintext block (may be <code>in</code>).
+     * @param	outPos	absolute position of the plaintext block.
+     */
+    public final void decryptBlock(ByteBuffer in, int inPos, ByteBuffer out, int outPos)
+    {
+        cryptBlocks(in, inPos, out, outPos, 1, decryptionKey());
+    } // decryptBlock
+
+    /**
+     * Encrypt <code>nBlocks</code> consecutive data blocks held in byte buffers, heap or direct.
+     * Positions are absolute; <code>src</code> and <code>dst</code> may be the same buffer at the same position.
+     *
+     * @param	src		buffer holding the plaintext blocks.
+     * @param	srcPos	absolute position of the first plaintext block.
+     * @param	dst		buffer receiving the ciphertext blocks.
+     * @param	dstPos	absolute position of the first ciphertext block.
+     * @param	nBlocks	number of 16-byte blocks to encrypt.
+     */
+    public final void encryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        cryptBlocks(src, srcPos, dst, dstPos, nBlocks, roundKeyEnc);
+    } // encryptBlocks
+
+    /**
+     * Decrypt <code>nBlocks</code> consecutive data blocks held in byte buffers, heap or direct.
+     * Positions are absolute; <code>src</code> and <code>dst</code> may be the same buffer at the same position.
+     *
+     * @param	src		buffer holding the ciphertext blocks.
+     * @param	srcPos	absolute position of the first ciphertext block.
+     * @param	dst		buffer receiving the plaintext blocks.
+     * @param	dstPos	absolute position of the first plaintext block.
+     * @param	nBlocks	number of 16-byte blocks to decrypt.
+     */
+    public final void decryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        cryptBlocks(src, srcPos, dst, dstPos, nBlocks, decryptionKey());
+    } // decryptBlocks
+
     /**
      * Encrypt a data block.
      *
@@ -354,7 +1257,7 @@ public final class Anubis
      */
     public final void encrypt(byte[/*16*/] block)
     {
-        crypt(block, roundKeyEnc);
+        unrolled.crypt(block, 0, block, 0, roundKeyEnc);
     } // encrypt
 
     /**
@@ -364,7 +1267,7 @@ public final class Anubis
      */
     public final void decrypt(byte[/*16*/] block)
     {
-        crypt(block, roundKeyDec);
+        unrolled.crypt(block, 0, block, 0, decryptionKey());
     } // decrypt
 
     public static String display(byte[] array)
@@ -380,6 +1283,140 @@ public final class Anubis
         return String.valueOf(val);
     }
 
+    /**
+     * Check the engine against a NESSIE test vector file (ext/anubisNNN-test-vectors.txt).
+     * Every vector carrying a cipher text is checked for encryption, decryption and
+     * the iterated encryptions.
+     *
+     * @param fileName  test vector file
+     * @return true if every vector matched
+     * @throws IOException on read failure
+     */
+    public static boolean checkTestVectors(String fileName) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        Anubis a = new Anubis();
+        byte[] key = null, plain = null, cipher = null, block;
+        int count = 0;
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                int eq = line.indexOf('=');
+                if (eq < 0)
+                {
+                    continue;
+                }
+                String name = line.substring(0, eq);
+                byte[] value = ByteUtils.hexToBytes(line.substring(eq + 1).replace(" ", ""));
+                if (name.equals("key"))
+                {
+                    key = value;
+                    cipher = null;
+                    a.keySetup(key);
+                }
+                else if (name.equals("plain"))
+                {
+                    plain = value;
+                }
+                else if (name.equals("cipher"))
+                {
+                    cipher = value;
+                    block = plain.clone();
+                    a.encrypt(block);
+                    if (!Arrays.equals(block, cipher))
+                    {
+                        System.out.println("ERROR IN ENCRYPTION, KEY: " + display(key));
+                        return false;
+                    }
+                    a.decrypt(block);
+                    if (!Arrays.equals(block, plain))
+                    {
+                        System.out.println("ERROR IN DECRYPTION, KEY: " + display(key));
+                        return false;
+                    }
+                    count++;
+                }
+                else if (cipher != null && (name.equals("Iterated 100 times") || name.equals("Iterated 1000 times")))
+                {
+                    int times = name.equals("Iterated 100 times") ? 100 : 1000;
+                    block = plain.clone();
+                    for (int i = 0; i < times; i++)
+                    {
+                        a.encrypt(block);
+                    }
+                    if (!Arrays.equals(block, value))
+                    {
+                        System.out.println("ERROR IN ITERATION TEST, KEY: " + display(key));
+                        return false;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        System.out.println(fileName + ": " + count + " vectors passed");
+        return true;
+    }
+
+    /**
+     * Check that the block API allocates nothing once the key is set up:
+     * every encrypt/decrypt entry point is run in a loop and the bytes
+     * allocated by the current thread are compared before and after.
+     * Needs a JVM whose ThreadMXBean reports allocated bytes; elsewhere
+     * the check is skipped and reported as passed.
+     *
+     * @param blocks    number of 16 byte blocks processed by every loop
+     * @return true if the loops allocated nothing
+     */
+    public static boolean checkAllocation(int blocks)
+    {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean) ||
+                !((com.sun.management.ThreadMXBean)mx).isThreadAllocatedMemorySupported())
+        {
+            System.out.println("Allocation check skipped: not supported by this JVM");
+            return true;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)mx;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+        byte[] buffer = new byte[16*blocks];
+        for (int N = 4; N <= 10; N++)
+        {
+            byte[] key = new byte[4*N];
+            key[0] = (byte)0x80;
+            Anubis a = new Anubis();
+            a.keySetup(key);
+            long allocated = 0;
+            for (int pass = 0; pass < 2; pass++) // the first pass builds the decryption key and loads classes
+            {
+                long start = threads.getThreadAllocatedBytes(id);
+                for (int i = 0; i < buffer.length; i += 16)
+                {
+                    a.encryptBlock(buffer, i, buffer, i);
+                    a.decryptBlock(buffer, i, buffer, i);
+                }
+                a.encryptBlocks(buffer, 0, buffer, 0, blocks);
+                a.decryptBlocks(buffer, 0, buffer, 0, blocks);
+                a.encrypt(buffer);
+                a.decrypt(buffer);
+                allocated = threads.getThreadAllocatedBytes(id) - start;
+            }
+            if (allocated != 0)
+            {
+                System.out.println((32*N) + "-bit key: " + allocated + " bytes allocated");
+                return false;
+            }
+        }
+        System.out.println("Allocation check passed: " + (2*blocks) + " blocks per key size");
+        return true;
+    }
+
     /**
      * Generate the test vector set for Anubis.
      *
@@ -460,20 +1497,181 @@ public final class Anubis
         }
     }
 
-    public static void clean()
+    /**
+     * Generate the source of AnubisUnrolled: one straight-line crypt routine
+     * for every allowed number of rounds R = 12 .. 18 (key sizes 128 .. 320 bits).
+     * The state alternates between two sets of locals, so rounds need no copying.
+     */
+    public static void makeUnrolledCrypt()
     {
-        for(int i=0; i < T0.length; i++)
-            T0[i]=0;
-        System.arraycopy(T0, 0, T1, 0, T1.length);
-        System.arraycopy(T0, 0, T2, 0, T2.length);
-        System.arraycopy(T0, 0, T3, 0, T3.length);
-        System.arraycopy(T0, 0, T4, 0, T4.length);
-        System.arraycopy(T0, 0, T5, 0, T5.length);
+        String[] shift = {" >>> 24)       ", " >>> 16) & 0xff", " >>>  8) & 0xff", "       ) & 0xff"};
+        String[] mask = {"0xff000000", "0x00ff0000", "0x0000ff00", "0x000000ff"};
+        String[] load = {" << 24", " << 16", " <<  8", "      "};
+        String[] store = {" >>> 24", " >>> 16", " >>>  8", "       "};
+        System.out.println("/*");
+        System.out.println(" * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)");
+        System.out.println(" *");
+        System.out.println(" *  Licensed under the Apache License, Version 2.0 (the \"License\");");
+        System.out.println(" *  you may not use this file except in compliance with the License.");
+        System.out.println(" *  You may obtain a copy of the License at");
+        System.out.println(" *");
+        System.out.println(" *      http://www.apache.org/licenses/LICENSE-2.0");
+        System.out.println(" *");
+        System.out.println(" *  Unless required by applicable law or agreed to in writing, software");
+        System.out.println(" *  distributed under the License is distributed on an \"AS IS\" BASIS,");
+        System.out.println(" *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.");
+        System.out.println(" *  See the License for the specific language governing permissions and");
+        System.out.println(" *  limitations under the License. */");
+        System.out.println();
+        System.out.println("package ru.ivanovpv.anubis4cellbox;");
+        System.out.println();
+        System.out.println("/**");
+        System.out.println(" * Fully unrolled Anubis crypt routines, one per number of rounds.");
+        System.out.println(" * {@link #forRounds(int)} is called once at key setup, so single blocks");
+        System.out.println(" * and bulk runs go straight to the routine of the key size.");
+        System.out.println(" *");
+        System.out.println(" * Generated by Anubis.makeUnrolledCrypt() -- do not edit by hand.");
+        System.out.println(" */");
+        System.out.println("abstract class AnubisUnrolled");
+        System.out.println("{");
+        System.out.println("    private static final int[] T0 = Anubis.T0;");
+        System.out.println("    private static final int[] T1 = Anubis.T1;");
+        System.out.println("    private static final int[] T2 = Anubis.T2;");
+        System.out.println("    private static final int[] T3 = Anubis.T3;");
+        System.out.println();
+        System.out.println("    private static final AnubisUnrolled[] ROUNDS =");
+        System.out.println("    {");
+        for (int R = 12; R <= 18; R++)
+        {
+            System.out.println("        new Rounds" + R + "()" + ((R < 18) ? "," : ""));
+        }
+        System.out.println("    };");
+        System.out.println();
+        System.out.println("    private AnubisUnrolled()");
+        System.out.println("    {}");
+        System.out.println();
+        System.out.println("    /**");
+        System.out.println("     * @param R   number of rounds, 12 .. 18.");
+        System.out.println("     * @return the unrolled routines for <code>R</code> rounds.");
+        System.out.println("     */");
+        System.out.println("    static AnubisUnrolled forRounds(int R)");
+        System.out.println("    {");
+        System.out.println("        return ROUNDS[R - 12];");
+        System.out.println("    }");
+        System.out.println();
+        System.out.println("    /**");
+        System.out.println("     * Either encrypt or decrypt a data block, according to the key schedule.");
+        System.out.println("     */");
+        System.out.println("    abstract void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k);");
+        System.out.println();
+        System.out.println("    /**");
+        System.out.println("     * Either encrypt or decrypt a run of consecutive data blocks, according to the key schedule.");
+        System.out.println("     */");
+        System.out.println("    abstract void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k);");
+        for (int R = 12; R <= 18; R++)
+        {
+            System.out.println();
+            System.out.println("    private static final class Rounds" + R + " extends AnubisUnrolled");
+            System.out.println("    {");
+            System.out.println("        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)");
+            System.out.println("        {");
+            System.out.println("            crypt" + R + "(in, inOff, out, outOff, k);");
+            System.out.println("        }");
+            System.out.println();
+            System.out.println("        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)");
+            System.out.println("        {");
+            System.out.println("            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)");
+            System.out.println("            {");
+            System.out.println("                crypt" + R + "(src, srcOff, dst, dstOff, k);");
+            System.out.println("            }");
+            System.out.println("        }");
+            System.out.println("    }");
+        }
+        for (int R = 12; R <= 18; R++)
+        {
+            System.out.println();
+            System.out.println("    /**");
+            System.out.println("     * Either encrypt or decrypt a data block with a " + (32*(R - 8)) + "-bit key schedule (" + R + " rounds).");
+            System.out.println("     */");
+            System.out.println("    static void crypt" + R + "(byte[] in, int inOff, byte[] out, int outOff, int[/*" + (4*(R + 1)) + "*/] k)");
+            System.out.println("    {");
+            System.out.println("        int s0, s1, s2, s3, t0, t1, t2, t3;");
+            System.out.println();
+            System.out.println("        // mu and sigma[K^0]:");
+            for (int i = 0; i < 4; i++)
+            {
+                System.out.println("        s" + i + " =");
+                for (int j = 0; j < 4; j++)
+                {
+                    int p = 4*i + j;
+                    String off = (p == 0) ? "inOff     " : "inOff + " + ((p < 10) ? " " : "") + p;
+                    System.out.println("                ((in[" + off + "]" + ((j == 0) ? "       " : " & 0xff") + ")" + load[j] + ") ^");
+                }
+                System.out.println("                k[" + i + "];");
+            }
+            String src = "s", dst = "t";
+            for (int r = 1; r < R; r++)
+            {
+                System.out.println();
+                System.out.println("        // round " + r + ":");
+                for (int i = 0; i < 4; i++)
+                {
+                    System.out.println("        " + dst + i + " =");
+                    for (int t = 0; t < 4; t++)
+                    {
+                        System.out.println("                T" + t + "[(" + src + t + shift[i] + "] ^");
+                    }
+                    System.out.println("                k[" + (4*r + i) + "];");
+                }
+                String tmp = src;
+                src = dst;
+                dst = tmp;
+            }
+            System.out.println();
+            System.out.println("        // last round:");
+            for (int i = 0; i < 4; i++)
+            {
+                System.out.println("        " + dst + i + " =");
+                for (int t = 0; t < 4; t++)
+                {
+                    System.out.println("                (T" + t + "[(" + src + t + shift[i] + "] & " + mask[t] + ") ^");
+                }
+                System.out.println("                k[" + (4*R + i) + "];");
+            }
+            System.out.println();
+            System.out.println("        // mu^{-1}:");
+            for (int i = 0; i < 4; i++)
+            {
+                for (int j = 0; j < 4; j++)
+                {
+                    int p = 4*i + j;
+                    String off = (p == 0) ? "outOff     " : "outOff + " + ((p < 10) ? " " : "") + p;
+                    System.out.println("        out[" + off + "] = (byte)(" + dst + i + store[j] + ");");
+                }
+            }
+            System.out.println("    } // crypt" + R);
+        }
+        System.out.println();
+        System.out.println("} // AnubisUnrolled");
     }
 
-/*    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
-        Anubis.makeTestVectors();
-    }*/
+        String dir = (args.length > 0) ? args[0] : "ext";
+        for (int N = 4; N <= 10; N++)
+        {
+            if (!checkTestVectors(dir + "/anubis" + (32*N) + "-test-vectors.txt"))
+            {
+                System.err.println("Test failed!");
+                return;
+            }
+        }
+        if (!checkAllocation(4096))
+        {
+            System.err.println("Test failed!");
+            return;
+        }
+        System.err.println("Test passed!");
+    }
 
 } // Anubis
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Encrypts or decrypts many files in legacy Anubis format at once. Every file is a blocking task on
+ * a pool of I/O threads, much bigger than the number of processors, so open/read/write latency of
+ * one file hides behind work on others. A semaphore bounds the number of open files, a second one
+ * lets at most one thread per processor run the cipher at a time. Results come back per file in
+ * input order, a failed file doesn't stop the batch and leaves no partial target behind,
+ * a target is never deleted unless this batch opened it.
+ * Files are processed by one shared CipherAnubis, its stream methods keep no state
+ */
+public class AnubisBatch
+{
+    public static final String SUFFIX = ".anb";
+    public static final int DEFAULT_IO_THREADS = 64;
+    public static final int DEFAULT_OPEN_FILES = 128;
+    private static final int CHUNK_SIZE = 64*1024;
+
+    private final CipherAnubis cipher;
+    private final int ioThreads;
+    private final Semaphore openFiles;
+    private final Semaphore cpu = new Semaphore(Parallel.THREADS);
+    private final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    /**
+     * Outcome of one file
+     */
+    public static final class Result
+    {
+        private final File source;
+        private final File target;
+        private long bytes;
+        private long nanos;
+        private IOException error;
+
+        Result(File source, File target)
+        {
+            this.source = source;
+            this.target = target;
+        }
+
+        public File getSource()
+        {
+            return source;
+        }
+
+        public File getTarget()
+        {
+            return target;
+        }
+
+        /**
+         * @return plain text bytes of the file
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        public long getElapsedNanos()
+        {
+            return nanos;
+        }
+
+        /**
+         * @return null if the file was processed, a RuntimeException of the file is wrapped as the cause
+         */
+        public IOException getError()
+        {
+            return error;
+        }
+
+        public boolean isOk()
+        {
+            return error == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return source + " -> " + target + ": " + (isOk() ? bytes + " bytes" : error.toString());
+        }
+    }
+
+    /**
+     * Outcome of the batch
+     */
+    public static final class Summary
+    {
+        private final Result[] results;
+        private final long elapsed;
+        private long bytes;
+        private int failures;
+
+        Summary(Result[] results, long elapsed)
+        {
+            this.results = results;
+            this.elapsed = elapsed;
+            for (int i = 0; i < results.length; i++)
+            {
+                if (results[i].isOk())
+                    bytes += results[i].bytes;
+                else
+                    failures++;
+            }
+        }
+
+        /**
+         * @return per file results in the order files were given
+         */
+        public Result[] getResults()
+        {
+            return results;
+        }
+
+        /**
+         * @return plain text bytes of successfully processed files
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        public int getFailures()
+        {
+            return failures;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsed;
+        }
+
+        /**
+         * @return throughput in MB/s
+         */
+        public double getThroughput()
+        {
+            return (elapsed == 0) ? 0 : bytes*1000.0/elapsed;
+        }
+
+        /**
+         * @return processed files per second
+         */
+        public double getFilesPerSecond()
+        {
+            return (elapsed == 0) ? 0 : (results.length - failures)*1e9/elapsed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return results.length + " files, " + failures + " failed, " + bytes + " bytes, " +
+                    Math.round(getFilesPerSecond()) + " files/s, " + Math.round(getThroughput()) + " MB/s";
+        }
+    }
+
+    public AnubisBatch(CipherAnubis cipher)
+    {
+        this(cipher, DEFAULT_IO_THREADS, DEFAULT_OPEN_FILES);
+    }
+
+    /**
+     * @param cipher cipher shared by all files
+     * @param ioThreads threads doing blocking file I/O
+     * @param maxOpenFiles files open at the same time, sources and targets counted, at least 2
+     */
+    public AnubisBatch(CipherAnubis cipher, int ioThreads, int maxOpenFiles)
+    {
+        if (ioThreads < 1 || maxOpenFiles < 2)
+            throw new IllegalArgumentException("Invalid I/O threads " + ioThreads + " or open files " + maxOpenFiles);
+        this.cipher = cipher;
+        this.ioThreads = ioThreads;
+        this.openFiles = new Semaphore(maxOpenFiles, true);
+    }
+
+    /**
+     * Encrypts sources[i] into targets[i], missing target directories are created
+     */
+    public Summary encrypt(File[] sources, File[] targets) throws InterruptedException
+    {
+        return process(sources, targets, true);
+    }
+
+    /**
+     * Decrypts sources[i] into targets[i], missing target directories are created
+     */
+    public Summary decrypt(File[] sources, File[] targets) throws InterruptedException
+    {
+        return process(sources, targets, false);
+    }
+
+    /**
+     * Encrypts every file under sourceDir into the same relative path under targetDir with SUFFIX appended
+     */
+    public Summary encryptTree(File sourceDir, File targetDir) throws IOException, InterruptedException
+    {
+        List<File> sources = new ArrayList<File>();
+        List<File> targets = new ArrayList<File>();
+        collect(sourceDir, targetDir, sources, targets, true);
+        return encrypt(sources.toArray(new File[sources.size()]), targets.toArray(new File[targets.size()]));
+    }
+
+    /**
+     * Decrypts every file with SUFFIX under sourceDir into the same relative path under targetDir without it
+     */
+    public Summary decryptTree(File sourceDir, File targetDir) throws IOException, InterruptedException
+    {
+        List<File> sources = new ArrayList<File>();
+        List<File> targets = new ArrayList<File>();
+        collect(sourceDir, targetDir, sources, targets, false);
+        return decrypt(sources.toArray(new File[sources.size()]), targets.toArray(new File[targets.size()]));
+    }
+
+    private static void collect(File source, File target, List<File> sources, List<File> targets, boolean encrypt) throws IOException
+    {
+        File[] files = source.listFiles();
+        if (files == null)
+            throw new IOException("Can't list directory " + source);
+        for (int i = 0; i < files.length; i++)
+        {
+            String name = files[i].getName();
+            if (files[i].isDirectory())
+                collect(files[i], new File(target, name), sources, targets, encrypt);
+            else if (encrypt)
+            {
+                sources.add(files[i]);
+                targets.add(new File(target, name + SUFFIX));
+            }
+            else if (name.endsWith(SUFFIX))
+            {
+                sources.add(files[i]);
+                targets.add(new File(target, name.substring(0, name.length() - SUFFIX.length())));
+            }
+        }
+    }
+
+    private Summary process(File[] sources, File[] targets, final boolean encrypt) throws InterruptedException
+    {
+        if (sources.length != targets.length)
+            throw new IllegalArgumentException("Got " + sources.length + " sources and " + targets.length + " targets");
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(ioThreads, Math.max(1, sources.length)), new ThreadFactory()
+        {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Anubis batch " + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Result[] results = new Result[sources.length];
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(sources.length);
+            for (int i = 0; i < sources.length; i++)
+            {
+                final Result result = new Result(sources[i], targets[i]);
+                results[i] = result;
+                futures.add(executor.submit(new Callable<Result>()
+                {
+                    public Result call()
+                    {
+                        process(result, encrypt);
+                        return result;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++)
+            {
+                futures.get(i).get();
+            }
+        }
+        catch (ExecutionException ex) // only Errors escape process()
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw (RuntimeException)cause;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return new Summary(results, System.nanoTime() - start);
+    }
+
+    private void process(Result result, boolean encrypt)
+    {
+        long start = System.nanoTime();
+        boolean acquired = false;
+        boolean created = false; // target was opened, so it's ours to delete on failure
+        try
+        {
+            openFiles.acquire(2);
+            acquired = true;
+            File parent = result.target.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+                throw new IOException("Can't create directory " + parent);
+            InputStream is = new FileInputStream(result.source);
+            try
+            {
+                OutputStream os = new FileOutputStream(result.target);
+                created = true;
+                try
+                {
+                    byte[] chunk = chunks.get(); // wiped by the cipher loop when the file is done
+                    if (encrypt)
+                    {
+                        long size = result.source.length();
+                        cipher.encrypt(is, os, size, chunk, cpu);
+                        if (is.read() >= 0)
+                            throw new IOException("File grew while being encrypted");
+                        result.bytes = size;
+                    }
+                    else
+                        result.bytes = cipher.decrypt(is, os, chunk, cpu);
+                }
+                finally
+                {
+                    os.close();
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            result.error = new InterruptedIOException("Batch interrupted");
+        }
+        catch (IOException ex)
+        {
+            result.error = ex;
+        }
+        catch (RuntimeException ex) // one bad file mustn't stop the batch
+        {
+            result.error = new IOException("Failed to process " + result.source, ex);
+        }
+        finally
+        {
+            if (acquired)
+                openFiles.release(2);
+        }
+        if (result.error != null && created)
+            result.target.delete();
+        result.nanos = System.nanoTime() - start;
+    }
+}
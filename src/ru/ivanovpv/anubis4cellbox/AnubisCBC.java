@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * Anubis in cipher block chaining (CBC) mode with PKCS#7 padding.
+ *
+ * Encryption is inherently serial, every block depends on the previous ciphertext.
+ * Decryption of a block needs only its own and the previous ciphertext block, so
+ * large inputs are decrypted in bulk, split into chunks across the shared worker
+ * threads. Instances hold no state besides the (immutable) key and may be shared.
+ */
+public final class AnubisCBC
+{
+    public static final int BLOCK_SIZE = 16;
+    private static final int PARALLEL_BYTES = 64*1024; // smallest chunk worth a worker thread
+
+    private final AnubisKey key;
+
+    /**
+     * @param key   The 32N-bit cipher key.
+     */
+    public AnubisCBC(byte[/*4*N*/] key)
+    {
+        this(new AnubisKey(key));
+    }
+
+    /**
+     * @param key   key schedule, must allow decryption if this instance decrypts.
+     */
+    public AnubisCBC(AnubisKey key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * @param length    plaintext length.
+     * @return ciphertext length, PKCS#7 always adds 1..16 bytes.
+     */
+    public static int getOutputSize(int length)
+    {
+        return (length/BLOCK_SIZE + 1)*BLOCK_SIZE;
+    }
+
+    /**
+     * Encrypt and pad a whole message.
+     *
+     * @param iv    initialization vector, 16 unpredictable bytes.
+     * @return new array holding the ciphertext.
+     */
+    public byte[] encrypt(byte[/*16*/] iv, byte[] in, int inOff, int len)
+    {
+        byte[] out = new byte[getOutputSize(len)];
+        encrypt(iv, in, inOff, len, out, 0);
+        return out;
+    }
+
+    /**
+     * Encrypt and pad a whole message into <code>out</code>, which must have
+     * room for {@link #getOutputSize(int)} bytes. <code>in</code> and <code>out</code>
+     * may be the same array at the same offset.
+     *
+     * @param iv    initialization vector, 16 unpredictable bytes.
+     * @return number of bytes written.
+     */
+    public int encrypt(byte[/*16*/] iv, byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        checkIV(iv);
+        int size = getOutputSize(len);
+        int full = len/BLOCK_SIZE;
+        byte[] prev = iv;
+        int prevOff = 0;
+        for (int b = 0; b < full; b++, inOff += BLOCK_SIZE, outOff += BLOCK_SIZE)
+        {
+            for (int i = 0; i < BLOCK_SIZE; i++)
+            {
+                out[outOff + i] = (byte)(in[inOff + i] ^ prev[prevOff + i]);
+            }
+            key.encryptBlock(out, outOff, out, outOff);
+            prev = out;
+            prevOff = outOff;
+        }
+        int tail = len - full*BLOCK_SIZE;
+        byte pad = (byte)(BLOCK_SIZE - tail);
+        for (int i = 0; i < BLOCK_SIZE; i++)
+        {
+            byte p = (i < tail) ? in[inOff + i] : pad;
+            out[outOff + i] = (byte)(p ^ prev[prevOff + i]);
+        }
+        key.encryptBlock(out, outOff, out, outOff);
+        return size;
+    }
+
+    /**
+     * Decrypt a whole message and remove its padding.
+     *
+     * @param iv    initialization vector used for encryption.
+     * @return new array holding the plaintext.
+     */
+    public byte[] decrypt(byte[/*16*/] iv, byte[] in, int inOff, int len)
+    {
+        byte[] out = new byte[len];
+        int size = decrypt(iv, in, inOff, len, out, 0);
+        byte[] plain = new byte[size];
+        System.arraycopy(out, 0, plain, 0, size);
+        Arrays.fill(out, (byte)0);
+        return plain;
+    }
+
+    /**
+     * Decrypt a whole message into <code>out</code>, which must have room for
+     * <code>len</code> bytes and must not overlap <code>in</code>.
+     *
+     * @param iv    initialization vector used for encryption.
+     * @return plaintext length, the padding bytes are left behind it in out.
+     */
+    public int decrypt(byte[/*16*/] iv, byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        return decrypt(iv, in, inOff, len, out, outOff, Parallel.parts(len, PARALLEL_BYTES));
+    }
+
+    int decrypt(final byte[] iv, final byte[] in, final int inOff, int len, final byte[] out, final int outOff, int parts)
+    {
+        checkIV(iv);
+        if (len == 0 || len%BLOCK_SIZE != 0)
+        {
+            throw new RuntimeException("Invalid CBC ciphertext length: " + len + " bytes.");
+        }
+        final int nBlocks = len/BLOCK_SIZE;
+        parts = Math.max(1, Math.min(parts, nBlocks));
+        Runnable[] tasks = new Runnable[parts];
+        for (int p = 0; p < parts; p++)
+        {
+            final int from = (int)((long)nBlocks*p/parts);
+            final int to = (int)((long)nBlocks*(p + 1)/parts);
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    decryptBlocks(iv, in, inOff, out, outOff, from, to);
+                }
+            };
+        }
+        Parallel.invokeAll(tasks);
+
+        // check and strip PKCS#7 padding without branching on the padding bytes:
+        int last = outOff + len - 1;
+        int pad = out[last] & 0xff;
+        int bad = ((pad - 1) | (BLOCK_SIZE - pad)) >>> 31; // pad outside 1..16
+        for (int i = 1; i <= BLOCK_SIZE; i++)
+        {
+            int inPad = (i - pad - 1) >>> 31; // 1 if i <= pad
+            bad |= -inPad & ((out[last - i + 1] & 0xff) ^ pad);
+        }
+        if (bad != 0)
+        {
+            throw new RuntimeException("Invalid CBC padding.");
+        }
+        return len - pad;
+    }
+
+    /**
+     * Decrypt blocks from .. to - 1 in bulk, then chain them with the preceding ciphertext.
+     */
+    private void decryptBlocks(byte[] iv, byte[] in, int inOff, byte[] out, int outOff, int from, int to)
+    {
+        int off = from*BLOCK_SIZE;
+        key.decryptBlocks(in, inOff + off, out, outOff + off, to - from);
+        for (int b = from; b < to; b++, off += BLOCK_SIZE)
+        {
+            byte[] prev = (b == 0) ? iv : in;
+            int prevOff = (b == 0) ? 0 : inOff + off - BLOCK_SIZE;
+            for (int i = 0; i < BLOCK_SIZE; i++)
+            {
+                out[outOff + off + i] ^= prev[prevOff + i];
+            }
+        }
+    }
+
+    private static void checkIV(byte[] iv)
+    {
+        if (iv.length != BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid CBC initialization vector size: " + iv.length + " bytes.");
+        }
+    }
+}
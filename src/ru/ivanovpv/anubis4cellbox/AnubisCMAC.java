@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * CMAC (NIST SP 800-38B, RFC 4493) over the 128-bit Anubis block.
+ *
+ * Every block depends on the previous one, so this MAC is strictly serial;
+ * see {@link AnubisPMAC} for a parallel alternative. An instance accumulates
+ * one message at a time and must not be shared between threads, the
+ * {@link AnubisKey} underneath may be.
+ */
+public final class AnubisCMAC
+{
+    public static final int BLOCK_SIZE = 16;
+    public static final int MAC_SIZE = 16;
+
+    private final AnubisKey key;
+    private final boolean ownsKey; // key was expanded here, clean() wipes it
+    private final byte[] k1 = new byte[BLOCK_SIZE]; // subkey for a complete last block
+    private final byte[] k2 = new byte[BLOCK_SIZE]; // subkey for a padded last block
+    private final byte[] x = new byte[BLOCK_SIZE]; // chaining value
+    private final byte[] buffer = new byte[BLOCK_SIZE]; // last, not yet processed block
+    private int bufferLength = 0;
+
+    /**
+     * @param key   The 32N-bit cipher key.
+     */
+    public AnubisCMAC(byte[/*4*N*/] key)
+    {
+        this(new AnubisKey(key, true), true);
+    }
+
+    /**
+     * @param key   key schedule, may be encrypt-only. {@link #clean()} leaves it alone.
+     */
+    public AnubisCMAC(AnubisKey key)
+    {
+        this(key, false);
+    }
+
+    private AnubisCMAC(AnubisKey key, boolean ownsKey)
+    {
+        this.key = key;
+        this.ownsKey = ownsKey;
+        byte[] l = new byte[BLOCK_SIZE];
+        key.encryptBlock(l, 0, l, 0);
+        dbl(l, k1);
+        dbl(k1, k2);
+        Arrays.fill(l, (byte)0);
+    }
+
+    /**
+     * Add message bytes.
+     */
+    public void update(byte[] in, int off, int len)
+    {
+        if (len == 0)
+        {
+            return;
+        }
+        if (bufferLength < BLOCK_SIZE)
+        {
+            int n = Math.min(len, BLOCK_SIZE - bufferLength);
+            System.arraycopy(in, off, buffer, bufferLength, n);
+            bufferLength += n;
+            off += n;
+            len -= n;
+            if (len == 0)
+            {
+                return;
+            }
+        }
+        // more data follows, so the buffered block is not the last one:
+        chain(buffer, 0);
+        for (; len > BLOCK_SIZE; off += BLOCK_SIZE, len -= BLOCK_SIZE)
+        {
+            chain(in, off);
+        }
+        System.arraycopy(in, off, buffer, 0, len);
+        bufferLength = len;
+    }
+
+    /**
+     * Finish the message and start over.
+     *
+     * @param out       buffer receiving the 16-byte MAC.
+     * @param outOff    offset of the MAC in out.
+     */
+    public void doFinal(byte[] out, int outOff)
+    {
+        byte[] k;
+        if (bufferLength == BLOCK_SIZE)
+        {
+            k = k1;
+        }
+        else
+        {
+            buffer[bufferLength] = (byte)0x80;
+            Arrays.fill(buffer, bufferLength + 1, BLOCK_SIZE, (byte)0);
+            k = k2;
+        }
+        for (int i = 0; i < BLOCK_SIZE; i++)
+        {
+            x[i] ^= buffer[i] ^ k[i];
+        }
+        key.encryptBlock(x, 0, out, outOff);
+        reset();
+    }
+
+    /**
+     * Finish the message and start over.
+     *
+     * @return the 16-byte MAC.
+     */
+    public byte[] doFinal()
+    {
+        byte[] mac = new byte[MAC_SIZE];
+        doFinal(mac, 0);
+        return mac;
+    }
+
+    /**
+     * MAC a whole message, discarding any unfinished one.
+     */
+    public byte[] mac(byte[] in, int off, int len)
+    {
+        reset();
+        update(in, off, len);
+        return doFinal();
+    }
+
+    /**
+     * Discard the message accumulated so far.
+     */
+    public void reset()
+    {
+        Arrays.fill(x, (byte)0);
+        Arrays.fill(buffer, (byte)0);
+        bufferLength = 0;
+    }
+
+    /**
+     * Overwrite the subkeys and the message state with zeros, also the key schedule
+     * if it was expanded by this instance. The instance can't be used afterwards.
+     */
+    public void clean()
+    {
+        reset();
+        Arrays.fill(k1, (byte)0);
+        Arrays.fill(k2, (byte)0);
+        if (ownsKey)
+        {
+            key.clean();
+        }
+    }
+
+    private void chain(byte[] in, int off)
+    {
+        for (int i = 0; i < BLOCK_SIZE; i++)
+        {
+            x[i] ^= in[off + i];
+        }
+        key.encryptBlock(x, 0, x, 0);
+    }
+
+    /**
+     * Multiply a 128-bit big-endian value by x in GF(2^128) (x^128 + x^7 + x^2 + x + 1).
+     *
+     * @param in    value to double.
+     * @param out   receives the result, may be in.
+     */
+    static void dbl(byte[/*16*/] in, byte[/*16*/] out)
+    {
+        int carry = (in[0] >> 7) & 0x87;
+        for (int i = 0; i < BLOCK_SIZE - 1; i++)
+        {
+            out[i] = (byte)((in[i] << 1) | ((in[i + 1] & 0xff) >>> 7));
+        }
+        out[BLOCK_SIZE - 1] = (byte)((in[BLOCK_SIZE - 1] << 1) ^ carry);
+    }
+}
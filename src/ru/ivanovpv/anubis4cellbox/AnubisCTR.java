@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * Anubis in counter (CTR) mode.
+ *
+ * Counter block i is the 128-bit big-endian sum of the initial counter block and i,
+ * keystream block i is its encryption. Encryption and decryption are the same
+ * operation. Any byte of the stream can be reached with {@link #seek(long)} without
+ * processing the data in front of it, and large buffers are split by counter range
+ * across the shared worker threads.
+ *
+ * An instance keeps a stream position and a keystream batch, so it must not be used
+ * by several threads at once. The underlying {@link AnubisKey} may be shared.
+ * Never reuse a key with the same initial counter block for different data.
+ */
+public final class AnubisCTR
+{
+    public static final int BLOCK_SIZE = 16;
+    static final int BATCH_BLOCKS = 256; // keystream blocks generated per call, 4 KiB
+    private static final int PARALLEL_BYTES = 64*1024; // smallest part worth a worker thread
+
+    private final AnubisKey key;
+    private final byte[] iv;
+    private final byte[] keystream = new byte[BATCH_BLOCKS*BLOCK_SIZE];
+    private long keystreamBlock = 0; // counter block index of keystream[0]
+    private int keystreamBlocks = 0; // number of valid blocks in keystream
+    private long position = 0;
+
+    /**
+     * @param key   The 32N-bit cipher key.
+     * @param iv    initial counter block, 16 bytes.
+     */
+    public AnubisCTR(byte[/*4*N*/] key, byte[/*16*/] iv)
+    {
+        this(new AnubisKey(key, true), iv);
+    }
+
+    /**
+     * @param key   key schedule, may be encrypt-only and shared with other instances.
+     * @param iv    initial counter block, 16 bytes.
+     */
+    public AnubisCTR(AnubisKey key, byte[/*16*/] iv)
+    {
+        if (iv.length != BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid CTR initial counter block size: " + iv.length + " bytes.");
+        }
+        this.key = key;
+        this.iv = iv.clone();
+    }
+
+    /**
+     * Start a new stream from position 0 with another initial counter block,
+     * keeping the key and the keystream buffer.
+     *
+     * @param iv    initial counter block, 16 bytes.
+     */
+    void reset(byte[/*16*/] iv)
+    {
+        System.arraycopy(iv, 0, this.iv, 0, BLOCK_SIZE);
+        keystreamBlocks = 0;
+        position = 0;
+    }
+
+    /**
+     * Move to an arbitrary position of the key stream.
+     *
+     * @param byteOffset    offset from the start of the stream.
+     */
+    public void seek(long byteOffset)
+    {
+        if (byteOffset < 0)
+        {
+            throw new RuntimeException("Invalid CTR stream position: " + byteOffset);
+        }
+        position = byteOffset;
+    }
+
+    /**
+     * @return current offset from the start of the stream.
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Encrypt or decrypt <code>len</code> bytes at the current stream position
+     * and advance the position. <code>in</code> and <code>out</code> may be the
+     * same array.
+     */
+    public void process(byte[] in, int inOff, byte[] out, int outOff, int len)
+    {
+        if (len >= 2*PARALLEL_BYTES)
+        {
+            processParallel(in, inOff, out, outOff, len);
+            position += len;
+            return;
+        }
+        while (len > 0)
+        {
+            long block = position/BLOCK_SIZE;
+            if (block < keystreamBlock || block >= keystreamBlock + keystreamBlocks)
+            {
+                // only as many blocks as this call needs, a short message costs one block
+                int nBlocks = Math.min(BATCH_BLOCKS, (int)((position - block*BLOCK_SIZE + len + BLOCK_SIZE - 1)/BLOCK_SIZE));
+                keystream(block, keystream, 0, nBlocks);
+                keystreamBlock = block;
+                keystreamBlocks = nBlocks;
+            }
+            int off = (int)(position - keystreamBlock*BLOCK_SIZE);
+            int n = Math.min(len, keystreamBlocks*BLOCK_SIZE - off);
+            xor(in, inOff, keystream, off, out, outOff, n);
+            inOff += n;
+            outOff += n;
+            len -= n;
+            position += n;
+        }
+    }
+
+    /**
+     * Encrypt or decrypt a whole buffer in place at the current stream position.
+     */
+    public void process(byte[] buffer)
+    {
+        process(buffer, 0, buffer, 0, buffer.length);
+    }
+
+    private void processParallel(final byte[] in, final int inOff, final byte[] out, final int outOff, final int len)
+    {
+        int parts = Parallel.parts(len, PARALLEL_BYTES);
+        Runnable[] tasks = new Runnable[parts];
+        final long start = position;
+        for (int p = 0; p < parts; p++)
+        {
+            // split on counter block boundaries of the stream
+            final long from = (p == 0) ? start : ((start + (long)len*p/parts) & ~(BLOCK_SIZE - 1L));
+            final long to = (p == parts - 1) ? start + len : ((start + (long)len*(p + 1)/parts) & ~(BLOCK_SIZE - 1L));
+            final byte[] scratch = (p == 0) ? keystream : new byte[BATCH_BLOCKS*BLOCK_SIZE];
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    int d = (int)(from - start);
+                    process(from, in, inOff + d, out, outOff + d, (int)(to - from), scratch);
+                }
+            };
+        }
+        keystreamBlocks = 0; // the batch buffer is used as scratch
+        Parallel.invokeAll(tasks);
+    }
+
+    private void process(long pos, byte[] in, int inOff, byte[] out, int outOff, int len, byte[] scratch)
+    {
+        int batch = scratch.length/BLOCK_SIZE;
+        while (len > 0)
+        {
+            long block = pos/BLOCK_SIZE;
+            int off = (int)(pos - block*BLOCK_SIZE);
+            int nBlocks = Math.min(batch, (off + len + BLOCK_SIZE - 1)/BLOCK_SIZE);
+            keystream(block, scratch, 0, nBlocks);
+            int n = Math.min(len, nBlocks*BLOCK_SIZE - off);
+            xor(in, inOff, scratch, off, out, outOff, n);
+            inOff += n;
+            outOff += n;
+            len -= n;
+            pos += n;
+        }
+    }
+
+    /**
+     * Generate consecutive keystream blocks. The counter blocks are laid out
+     * first and then encrypted in place with one bulk call.
+     *
+     * @param block     index of the first counter block.
+     * @param out       buffer receiving the keystream.
+     * @param outOff    offset of the first block in out.
+     * @param nBlocks   number of blocks.
+     */
+    public void keystream(long block, byte[] out, int outOff, int nBlocks)
+    {
+        for (int i = 0; i < nBlocks; i++)
+        {
+            counter(iv, block + i, out, outOff + i*BLOCK_SIZE);
+        }
+        key.encryptBlocks(out, outOff, out, outOff, nBlocks);
+    }
+
+    /**
+     * Compute counter block iv + block (mod 2^128), both big-endian.
+     */
+    static void counter(byte[] iv, long block, byte[] out, int outOff)
+    {
+        int carry = 0;
+        for (int i = BLOCK_SIZE - 1; i >= 0; i--)
+        {
+            int sum = (iv[i] & 0xff) + (int)(block & 0xff) + carry;
+            out[outOff + i] = (byte)sum;
+            carry = sum >>> 8;
+            block >>>= 8;
+        }
+    }
+
+    static void xor(byte[] in, int inOff, byte[] ks, int ksOff, byte[] out, int outOff, int len)
+    {
+        for (int i = 0; i < len; i++)
+        {
+            out[outOff + i] = (byte)(in[inOff + i] ^ ks[ksOff + i]);
+        }
+    }
+
+    /**
+     * Wipe the buffered keystream. The key schedule is left alone, it may be shared.
+     */
+    public void clean()
+    {
+        Arrays.fill(keystream, (byte)0);
+        keystreamBlocks = 0;
+    }
+}
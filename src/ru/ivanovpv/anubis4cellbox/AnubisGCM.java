@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * Authenticated encryption with Anubis in Galois/counter mode (NIST SP 800-38D).
+ *
+ * Anubis has a 128-bit block like AES, so the construction is taken over unchanged:
+ * CTR encryption with a 32-bit block counter and a GHASH tag over the associated
+ * data and the ciphertext. Both are computed in a single pass, a batch of keystream
+ * at a time. GHASH uses 4-bit tables (Shoup's method, 256 bytes per key) which are
+ * built once per {@link AnubisKey} and kept with its schedule.
+ *
+ * Instances hold no state besides the key and may be shared; every message needs a
+ * fresh {@link Stream}. Never reuse a nonce with the same key.
+ */
+public final class AnubisGCM
+{
+    public static final int BLOCK_SIZE = 16;
+    public static final int TAG_SIZE = 16;
+    public static final int NONCE_SIZE = 12; // recommended nonce size, others are hashed
+    private static final int BATCH_BLOCKS = 16; // keystream blocks generated per call
+
+    private static final int[] LAST4 = {
+            0x0000, 0x1c20, 0x3840, 0x2460, 0x7080, 0x6ca0, 0x48c0, 0x54e0,
+            0xe100, 0xfd20, 0xd940, 0xc560, 0x9180, 0x8da0, 0xa9c0, 0xb5e0
+    };
+
+    private final AnubisKey key;
+
+    /**
+     * @param key   The 32N-bit cipher key.
+     */
+    public AnubisGCM(byte[/*4*N*/] key)
+    {
+        this(new AnubisKey(key, true));
+    }
+
+    /**
+     * @param key   key schedule, may be encrypt-only. Sharing one key between
+     *              instances shares its GHASH tables as well.
+     */
+    public AnubisGCM(AnubisKey key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * Encrypt and authenticate a whole message.
+     *
+     * @param nonce     unique per message, preferably 12 bytes.
+     * @param aad       associated data, authenticated but not encrypted, may be null.
+     * @param plaintext message.
+     * @return ciphertext followed by the 16-byte tag.
+     */
+    public byte[] encrypt(byte[] nonce, byte[] aad, byte[] plaintext)
+    {
+        byte[] out = new byte[plaintext.length + TAG_SIZE];
+        Stream s = start(nonce, true);
+        if (aad != null)
+        {
+            s.updateAAD(aad, 0, aad.length);
+        }
+        s.update(plaintext, 0, plaintext.length, out, 0);
+        s.finish(out, plaintext.length);
+        return out;
+    }
+
+    /**
+     * Check and decrypt a whole message. No plaintext is released unless the tag matches.
+     *
+     * @param nonce     nonce used for encryption.
+     * @param aad       associated data used for encryption, may be null.
+     * @param ciphertext ciphertext followed by the 16-byte tag.
+     * @return plaintext.
+     */
+    public byte[] decrypt(byte[] nonce, byte[] aad, byte[] ciphertext)
+    {
+        int length = ciphertext.length - TAG_SIZE;
+        if (length < 0)
+        {
+            throw new RuntimeException("GCM ciphertext too short: " + ciphertext.length + " bytes.");
+        }
+        byte[] out = new byte[length];
+        Stream s = start(nonce, false);
+        if (aad != null)
+        {
+            s.updateAAD(aad, 0, aad.length);
+        }
+        s.update(ciphertext, 0, length, out, 0);
+        try
+        {
+            s.verify(ciphertext, length);
+        }
+        catch (RuntimeException ex)
+        {
+            Arrays.fill(out, (byte)0);
+            throw ex;
+        }
+        return out;
+    }
+
+    /**
+     * Start encryption or decryption of one message in pieces.
+     *
+     * @param nonce     unique per message, preferably 12 bytes.
+     * @param encrypt   true to encrypt, false to decrypt.
+     */
+    public Stream start(byte[] nonce, boolean encrypt)
+    {
+        return new Stream(nonce, encrypt);
+    }
+
+    /**
+     * One message being encrypted or decrypted piecewise: all associated data first,
+     * then the text in pieces of any size, then the tag. Text is processed as it
+     * arrives, so decrypted output must be discarded if {@link #verify} fails.
+     */
+    public final class Stream
+    {
+        private final boolean encrypt;
+        private final long[] table = key.ghashTable();
+        private final byte[] j0 = new byte[BLOCK_SIZE];
+        private final byte[] x = new byte[BLOCK_SIZE]; // GHASH state
+        private final byte[] partial = new byte[BLOCK_SIZE]; // unhashed tail
+        private int partialLength = 0;
+        private final byte[] keystream = new byte[BATCH_BLOCKS*BLOCK_SIZE];
+        private int keystreamPos = keystream.length;
+        private int counter; // low 32 bits of the next counter block
+        private long aadLength = 0;
+        private long textLength = 0;
+        private boolean text = false; // associated data complete
+        private boolean finished = false;
+
+        private Stream(byte[] nonce, boolean encrypt)
+        {
+            if (nonce.length == 0)
+            {
+                throw new RuntimeException("Invalid GCM nonce size: 0 bytes.");
+            }
+            this.encrypt = encrypt;
+            if (nonce.length == NONCE_SIZE)
+            {
+                System.arraycopy(nonce, 0, j0, 0, NONCE_SIZE);
+                j0[BLOCK_SIZE - 1] = 1;
+            }
+            else
+            {
+                ghash(nonce, 0, nonce.length);
+                flush();
+                byte[] lengths = new byte[BLOCK_SIZE];
+                putLong(8L*nonce.length, lengths, 8);
+                ghash(lengths, 0, BLOCK_SIZE);
+                System.arraycopy(x, 0, j0, 0, BLOCK_SIZE);
+                Arrays.fill(x, (byte)0);
+            }
+            counter = ((j0[12] & 0xff) << 24 | (j0[13] & 0xff) << 16 | (j0[14] & 0xff) << 8 | (j0[15] & 0xff)) + 1;
+        }
+
+        /**
+         * Add associated data. Must come before any text.
+         */
+        public void updateAAD(byte[] aad, int off, int len)
+        {
+            if (text || finished)
+            {
+                throw new RuntimeException("GCM associated data must precede the text.");
+            }
+            ghash(aad, off, len);
+            aadLength += len;
+        }
+
+        /**
+         * Encrypt or decrypt the next piece of text. <code>in</code> and
+         * <code>out</code> may be the same array at the same offset.
+         *
+         * @return number of bytes written to out, always len.
+         */
+        public int update(byte[] in, int inOff, int len, byte[] out, int outOff)
+        {
+            if (finished)
+            {
+                throw new RuntimeException("GCM message already finished.");
+            }
+            if (textLength + len > ((1L << 32) - 2)*BLOCK_SIZE)
+            {
+                throw new RuntimeException("GCM message too long.");
+            }
+            if (!text)
+            {
+                flush();
+                text = true;
+            }
+            textLength += len;
+            int done = 0;
+            while (done < len)
+            {
+                if (keystreamPos == keystream.length)
+                {
+                    nextKeystream();
+                }
+                int n = Math.min(len - done, keystream.length - keystreamPos);
+                if (!encrypt)
+                {
+                    ghash(in, inOff + done, n);
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    out[outOff + done + i] = (byte)(in[inOff + done + i] ^ keystream[keystreamPos + i]);
+                }
+                if (encrypt)
+                {
+                    ghash(out, outOff + done, n);
+                }
+                keystreamPos += n;
+                done += n;
+            }
+            return len;
+        }
+
+        /**
+         * Finish encryption and write the tag.
+         *
+         * @param tag       buffer receiving the 16-byte tag.
+         * @param tagOff    offset of the tag in tag.
+         */
+        public void finish(byte[] tag, int tagOff)
+        {
+            byte[] t = computeTag();
+            System.arraycopy(t, 0, tag, tagOff, TAG_SIZE);
+        }
+
+        /**
+         * Finish decryption and check the tag, comparing in constant time.
+         *
+         * @param tag       buffer holding the expected 16-byte tag.
+         * @param tagOff    offset of the tag in tag.
+         */
+        public void verify(byte[] tag, int tagOff)
+        {
+            byte[] t = computeTag();
+            int diff = 0;
+            for (int i = 0; i < TAG_SIZE; i++)
+            {
+                diff |= t[i] ^ tag[tagOff + i];
+            }
+            if (diff != 0)
+            {
+                throw new RuntimeException("GCM tag mismatch.");
+            }
+        }
+
+        private byte[] computeTag()
+        {
+            if (finished)
+            {
+                throw new RuntimeException("GCM message already finished.");
+            }
+            finished = true;
+            flush();
+            byte[] lengths = new byte[BLOCK_SIZE];
+            putLong(8L*aadLength, lengths, 0);
+            putLong(8L*textLength, lengths, 8);
+            ghash(lengths, 0, BLOCK_SIZE);
+            byte[] t = j0.clone();
+            key.encryptBlock(t, 0, t, 0);
+            for (int i = 0; i < BLOCK_SIZE; i++)
+            {
+                t[i] ^= x[i];
+            }
+            Arrays.fill(keystream, (byte)0);
+            return t;
+        }
+
+        private void nextKeystream()
+        {
+            for (int b = 0, off = 0; b < BATCH_BLOCKS; b++, off += BLOCK_SIZE, counter++)
+            {
+                System.arraycopy(j0, 0, keystream, off, 12);
+                keystream[off + 12] = (byte)(counter >>> 24);
+                keystream[off + 13] = (byte)(counter >>> 16);
+                keystream[off + 14] = (byte)(counter >>>  8);
+                keystream[off + 15] = (byte)(counter       );
+            }
+            key.encryptBlocks(keystream, 0, keystream, 0, BATCH_BLOCKS);
+            keystreamPos = 0;
+        }
+
+        /**
+         * Absorb data into GHASH, a whole block at a time.
+         */
+        private void ghash(byte[] data, int off, int len)
+        {
+            if (partialLength > 0)
+            {
+                int n = Math.min(len, BLOCK_SIZE - partialLength);
+                System.arraycopy(data, off, partial, partialLength, n);
+                partialLength += n;
+                off += n;
+                len -= n;
+                if (partialLength < BLOCK_SIZE)
+                {
+                    return;
+                }
+                absorb(partial, 0);
+                partialLength = 0;
+            }
+            for (; len >= BLOCK_SIZE; off += BLOCK_SIZE, len -= BLOCK_SIZE)
+            {
+                absorb(data, off);
+            }
+            if (len > 0)
+            {
+                System.arraycopy(data, off, partial, 0, len);
+                partialLength = len;
+            }
+        }
+
+        /**
+         * Absorb a zero-padded partial block, if any.
+         */
+        private void flush()
+        {
+            if (partialLength > 0)
+            {
+                Arrays.fill(partial, partialLength, BLOCK_SIZE, (byte)0);
+                absorb(partial, 0);
+                partialLength = 0;
+            }
+        }
+
+        private void absorb(byte[] block, int off)
+        {
+            for (int i = 0; i < BLOCK_SIZE; i++)
+            {
+                x[i] ^= block[off + i];
+            }
+            multiplyH(table, x);
+        }
+    }
+
+    private static void putLong(long v, byte[] out, int off)
+    {
+        for (int i = 7; i >= 0; i--, v >>>= 8)
+        {
+            out[off + i] = (byte)v;
+        }
+    }
+
+    /**
+     * Build the 4-bit multiplication tables for hash key H.
+     *
+     * @param h hash key H = E_K(0^128).
+     * @return H*i for all 4-bit i, high halves in words 0..15, low halves in words 16..31.
+     */
+    static long[] ghashTable(byte[/*16*/] h)
+    {
+        long[] t = new long[32];
+        long vh = 0, vl = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            vh = (vh << 8) | (h[i] & 0xff);
+            vl = (vl << 8) | (h[8 + i] & 0xff);
+        }
+        t[8] = vh;
+        t[16 + 8] = vl;
+        for (int i = 4; i > 0; i >>>= 1)
+        {
+            long reduce = ((vl & 1) != 0) ? 0xe100000000000000L : 0;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ reduce;
+            t[i] = vh;
+            t[16 + i] = vl;
+        }
+        for (int i = 2; i <= 8; i <<= 1)
+        {
+            for (int j = 1; j < i; j++)
+            {
+                t[i + j] = t[i] ^ t[j];
+                t[16 + i + j] = t[16 + i] ^ t[16 + j];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Multiply x by H in GF(2^128) in place, four bits at a time.
+     */
+    static void multiplyH(long[] t, byte[/*16*/] x)
+    {
+        int lo = x[15] & 0xf;
+        long zh = t[lo];
+        long zl = t[16 + lo];
+        for (int i = 15; i >= 0; i--)
+        {
+            lo = x[i] & 0xf;
+            int hi = (x[i] >>> 4) & 0xf;
+            int rem;
+            if (i != 15)
+            {
+                rem = (int)zl & 0xf;
+                zl = (zh << 60) | (zl >>> 4);
+                zh = (zh >>> 4) ^ ((long)LAST4[rem] << 48) ^ t[lo];
+                zl ^= t[16 + lo];
+            }
+            rem = (int)zl & 0xf;
+            zl = (zh << 60) | (zl >>> 4);
+            zh = (zh >>> 4) ^ ((long)LAST4[rem] << 48) ^ t[hi];
+            zl ^= t[16 + hi];
+        }
+        putLong(zh, x, 0);
+        putLong(zl, x, 8);
+    }
+}
@@ -22,6 +22,10 @@ public class AnubisHeader
     byte lover;
     long size;
     public static int HEADER_SIZE=16;
+    public static final byte HI_VERSION=1;
+    public static final byte LO_VERSION=2; //size known in advance, followed by ECB blocks
+    public static final byte LO_VERSION_FRAMED=3; //size unknown, followed by cipher frames (see AnubisOutputStream)
+    public static final long UNKNOWN_SIZE=-1;
 
     public AnubisHeader(byte hiver, byte lover, long size)
     {
@@ -34,6 +38,7 @@ public class AnubisHeader
     {
         if(buffer==null || buffer.length < HEADER_SIZE)
             return;
+        System.arraycopy(buffer, 0, descriptor, 0, 3);
         this.hiver=buffer[12];
         this.lover=buffer[13];
         size= ByteUtils.byteArrayToLong(buffer, 4);
@@ -42,8 +47,8 @@ public class AnubisHeader
 
     public AnubisHeader(long size)
     {
-        this.hiver=1;
-        this.lover=2;
+        this.hiver=HI_VERSION;
+        this.lover=LO_VERSION;
         this.size=size;
     }
 
@@ -77,6 +82,23 @@ public class AnubisHeader
         return lover;
     }
 
+    /**
+     * @return true if header starts with ANB descriptor and has known version
+     */
+    public boolean isValid()
+    {
+        return descriptor[0]=='A' && descriptor[1]=='N' && descriptor[2]=='B' && hiver==HI_VERSION &&
+                (lover==LO_VERSION || lover==LO_VERSION_FRAMED);
+    }
+
+    /**
+     * @return true if data after header is split into frames, size isn't stored
+     */
+    public boolean isFramed()
+    {
+        return lover==LO_VERSION_FRAMED;
+    }
+
     public String getVersionInfo()
     {
         StringBuilder sb=new StringBuilder().append(hiver).append('.').append(lover);
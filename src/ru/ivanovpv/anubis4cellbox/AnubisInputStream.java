@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decrypting filter stream, reads AnubisHeader itself on first read.
+ * Understands both frames written by {@link AnubisOutputStream} (version 1.3) and
+ * ECB blocks of known size written by CipherAnubis.encrypt(InputStream, OutputStream, long) (version 1.2),
+ * the latter only makes sense with CipherAnubis. Mark/reset isn't supported
+ */
+public class AnubisInputStream extends FilterInputStream
+{
+    static final int MAX_FRAME_SIZE = 16*1024*1024; // sanity limit for frame lengths read from stream
+    private static final int LEGACY_CHUNK_SIZE = 64*1024; // multiple of 16
+
+    private final Cipher cipher;
+    private byte[] frame = new byte[AnubisOutputStream.FRAME_HEADER_SIZE]; // cipher text, grows up to the biggest frame
+    private byte[] plain = new byte[0]; // decrypted frame
+    private int pos = 0;
+    private int limit = 0;
+    private AnubisHeader header = null;
+    private long remaining; // version 1.2: plain bytes left
+    private long cipherRemaining; // version 1.2: cipher bytes left
+    private boolean eof = false;
+    private boolean closed = false;
+
+    public AnubisInputStream(InputStream in, Cipher cipher)
+    {
+        super(in);
+        this.cipher = cipher;
+    }
+
+    /**
+     * @return header of the stream, reads it if nothing was read yet
+     */
+    public AnubisHeader getHeader() throws IOException
+    {
+        ensureOpen();
+        if (header == null)
+            readHeader();
+        return header;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        ensureOpen();
+        if (pos == limit && !fill())
+            return -1;
+        return plain[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (pos == limit && !fill())
+            return -1;
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(plain, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        ensureOpen();
+        long skipped = 0;
+        while (skipped < n)
+        {
+            if (pos == limit && !fill())
+                break;
+            int step = (int)Math.min(n - skipped, limit - pos);
+            pos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return number of decrypted bytes available without touching underlying stream
+     */
+    @Override
+    public int available() throws IOException
+    {
+        ensureOpen();
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit)
+    {
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Wipes buffers and closes underlying stream
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        Arrays.fill(frame, (byte)0);
+        Arrays.fill(plain, (byte)0);
+        pos = limit = 0;
+        in.close();
+    }
+
+    private void readHeader() throws IOException
+    {
+        byte[] buffer = new byte[AnubisHeader.HEADER_SIZE];
+        ByteUtils.readFully(in, buffer, 0, buffer.length);
+        AnubisHeader ah = new AnubisHeader(buffer);
+        if (!ah.isValid())
+            throw new IOException("Not an Anubis stream or unsupported version " + ah.getVersionInfo());
+        if (!ah.isFramed())
+        {
+            remaining = CipherAnubis.legacySize(ah);
+            cipherRemaining = CipherAnubis.legacyLength(remaining);
+        }
+        header = ah;
+    }
+
+    /**
+     * Decrypts next frame or chunk of blocks into plain
+     * @return false at the end of data
+     */
+    private boolean fill() throws IOException
+    {
+        if (header == null)
+            readHeader();
+        pos = limit = 0;
+        while (!eof && limit == 0) // frames may be empty
+        {
+            if (header.isFramed())
+                fillFrame();
+            else
+                fillBlocks();
+        }
+        return limit > 0;
+    }
+
+    private void fillFrame() throws IOException
+    {
+        ByteUtils.readFully(in, frame, 0, AnubisOutputStream.FRAME_HEADER_SIZE);
+        int size = ByteUtils.byteArrayToInt(frame, 0);
+        int length = ByteUtils.byteArrayToInt(frame, 4);
+        if (size == 0 && length == 0)
+        {
+            eof = true;
+            return;
+        }
+        if (size <= 0 || size > MAX_FRAME_SIZE || length < 0 || length > size)
+            throw new IOException("Corrupted Anubis frame: " + size + "/" + length);
+        ensureCapacity(size);
+        ByteUtils.readFully(in, frame, 0, size);
+        int n = cipher.decrypt(frame, 0, size, plain, 0);
+        if (n < length)
+            throw new IOException("Corrupted Anubis frame: " + n + " bytes decrypted, " + length + " expected");
+        limit = length;
+    }
+
+    private void fillBlocks() throws IOException
+    {
+        if (cipherRemaining == 0)
+        {
+            eof = true;
+            return;
+        }
+        int size = (int)Math.min(LEGACY_CHUNK_SIZE, cipherRemaining);
+        ensureCapacity(size);
+        ByteUtils.readFully(in, frame, 0, size);
+        cipher.decrypt(frame, 0, size, plain, 0);
+        cipherRemaining -= size;
+        limit = (int)Math.min(size, remaining);
+        remaining -= limit;
+    }
+
+    private void ensureCapacity(int size)
+    {
+        if (frame.length < size)
+        {
+            Arrays.fill(frame, (byte)0);
+            frame = new byte[size];
+        }
+        if (plain.length < size)
+        {
+            Arrays.fill(plain, (byte)0);
+            plain = new byte[size];
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+}
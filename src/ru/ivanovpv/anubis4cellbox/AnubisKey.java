@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable Anubis key schedule.
+ *
+ * The schedule is expanded once at construction and can't be rekeyed afterwards,
+ * block operations keep their state in locals, so one instance may be used by any
+ * number of threads at once without locking. The decryption schedule is built on
+ * first use and published safely (see {@link Anubis#decryptionKey()}).
+ * {@link #clean()} wipes this schedule only, never the shared lookup tables.
+ */
+public final class AnubisKey
+{
+    private final Anubis anubis; // privately owned, never rekeyed
+    private volatile long[] ghashTable; // GCM tables for this key, built on first use
+
+    /**
+     * Expand the key schedule for a given cipher key.
+     *
+     * @param key   The 32N-bit cipher key.
+     */
+    public AnubisKey(byte[/*4*N*/] key)
+    {
+        this(key, false);
+    }
+
+    /**
+     * Expand the key schedule for a given cipher key.
+     *
+     * @param key           The 32N-bit cipher key.
+     * @param encryptOnly   if true the decryption schedule is never built and decryption is refused.
+     */
+    public AnubisKey(byte[/*4*N*/] key, boolean encryptOnly)
+    {
+        Anubis a = new Anubis();
+        a.keySetup(key, encryptOnly);
+        anubis = a;
+    }
+
+    /**
+     * Snapshot the key schedule of a keyed Anubis instance.
+     *
+     * @param anubis    keyed Anubis instance, its schedule is copied.
+     */
+    AnubisKey(Anubis anubis)
+    {
+        Anubis a = new Anubis();
+        a.keySetup(anubis);
+        this.anubis = a;
+    }
+
+    /**
+     * Encrypt a data block taken from <code>in</code> at <code>inOff</code>
+     * into <code>out</code> at <code>outOff</code>.
+     */
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff)
+    {
+        anubis.encryptBlock(in, inOff, out, outOff);
+    }
+
+    /**
+     * Decrypt a data block taken from <code>in</code> at <code>inOff</code>
+     * into <code>out</code> at <code>outOff</code>.
+     */
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff)
+    {
+        anubis.decryptBlock(in, inOff, out, outOff);
+    }
+
+    /**
+     * Encrypt <code>nBlocks</code> consecutive data blocks.
+     */
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        anubis.encryptBlocks(src, srcOff, dst, dstOff, nBlocks);
+    }
+
+    /**
+     * Decrypt <code>nBlocks</code> consecutive data blocks.
+     */
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        anubis.decryptBlocks(src, srcOff, dst, dstOff, nBlocks);
+    }
+
+    /**
+     * Encrypt <code>nBlocks</code> consecutive data blocks held in byte buffers (absolute positions).
+     */
+    public void encryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        anubis.encryptBlocks(src, srcPos, dst, dstPos, nBlocks);
+    }
+
+    /**
+     * Decrypt <code>nBlocks</code> consecutive data blocks held in byte buffers (absolute positions).
+     */
+    public void decryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        anubis.decryptBlocks(src, srcPos, dst, dstPos, nBlocks);
+    }
+
+    /**
+     * Get the GHASH multiplication tables of this key (see {@link AnubisGCM}), building them on first use.
+     */
+    long[] ghashTable()
+    {
+        long[] t = ghashTable;
+        if (t == null)
+        {
+            synchronized (this)
+            {
+                t = ghashTable;
+                if (t == null)
+                {
+                    byte[] h = new byte[16];
+                    anubis.encryptBlock(h, 0, h, 0);
+                    t = AnubisGCM.ghashTable(h);
+                    Arrays.fill(h, (byte)0);
+                    ghashTable = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return true if this schedule was expanded for encryption only.
+     */
+    public boolean isEncryptOnly()
+    {
+        return anubis.isEncryptOnly();
+    }
+
+    /**
+     * Overwrite this key schedule with zeros. Other keys and the shared lookup tables are not affected.
+     */
+    public void clean()
+    {
+        anubis.clean();
+        long[] t = ghashTable;
+        if (t != null)
+        {
+            Arrays.fill(t, 0L);
+        }
+    }
+}
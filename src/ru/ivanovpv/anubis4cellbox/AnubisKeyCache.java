@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of expanded Anubis key schedules, safe for concurrent use.
+ * Entries are keyed by SHA1 digest of the key bytes, so raw keys are never retained.
+ * Callers always get their own copy of a cached schedule; evicted schedules are wiped.
+ * Caching is opt-in: ciphers use a cache only when one is passed to their constructor.
+ * Cached schedules outlive Cipher.clean() of ciphers built from them, and the unsalted
+ * SHA1 index is a fingerprint of the key, so use {@link #remove(byte[])} or {@link #clear()}
+ * once a key is no longer needed.
+ */
+public final class AnubisKeyCache
+{
+    public static final int DEFAULT_SIZE=256;
+    private static final int DIGEST_SIZE=20;
+    private static final AnubisKeyCache defaultCache=new AnubisKeyCache(DEFAULT_SIZE);
+
+    private final LinkedHashMap<String, Anubis> schedules;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize maximum number of cached key schedules
+     */
+    public AnubisKeyCache(int maxSize)
+    {
+        if(maxSize < 1)
+            throw new RuntimeException("Invalid key cache size: "+maxSize);
+        this.maxSize=maxSize;
+        schedules=new LinkedHashMap<String, Anubis>(16, 0.75f, true) //access order
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Anubis> eldest)
+            {
+                if(size() <= AnubisKeyCache.this.maxSize)
+                    return false;
+                eldest.getValue().clean();
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return process-wide cache that may be passed to CipherAnubis and CipherAnubisRandomized constructors
+     */
+    public static AnubisKeyCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Gets Anubis keyed with given key. Key schedule is expanded only on cache miss,
+     * otherwise it's copied from cache
+     * @param key the 32N-bit cipher key
+     * @return new keyed Anubis instance (owns its key schedule)
+     */
+    public Anubis getAnubis(byte[] key)
+    {
+        String digest=digest(key);
+        Anubis anubis=new Anubis();
+        Anubis cached;
+        synchronized(this)
+        {
+            cached=schedules.get(digest);
+            if(cached!=null)
+            {
+                hits++;
+                anubis.keySetup(cached);
+                return anubis;
+            }
+            misses++;
+        }
+        cached=new Anubis(); //expanding outside of lock
+        cached.keySetup(key);
+        cached.decryptionKey(); //cached schedules are complete, copies never rebuild inverse schedule
+        synchronized(this)
+        {
+            Anubis raced=schedules.get(digest);
+            if(raced==null)
+                schedules.put(digest, cached);
+            else //other thread was faster
+            {
+                cached.clean();
+                cached=raced;
+            }
+            anubis.keySetup(cached);
+        }
+        return anubis;
+    }
+
+    /**
+     * Keyed Anubis, through cache unless it's null
+     */
+    static Anubis getAnubis(AnubisKeyCache cache, byte[] key)
+    {
+        if(cache!=null)
+            return cache.getAnubis(key);
+        Anubis anubis=new Anubis();
+        anubis.keySetup(key);
+        return anubis;
+    }
+
+    /**
+     * Wipes and removes cached key schedule of given key
+     * @param key the 32N-bit cipher key
+     * @return true if key was cached
+     */
+    public boolean remove(byte[] key)
+    {
+        String digest=digest(key);
+        Anubis cached;
+        synchronized(this)
+        {
+            cached=schedules.remove(digest);
+        }
+        if(cached==null)
+            return false;
+        cached.clean();
+        return true;
+    }
+
+    /**
+     * Changes maximum cache size, surplus entries are evicted and wiped
+     * @param maxSize maximum number of cached key schedules
+     */
+    public synchronized void setMaxSize(int maxSize)
+    {
+        if(maxSize < 1)
+            throw new RuntimeException("Invalid key cache size: "+maxSize);
+        this.maxSize=maxSize;
+        Iterator<Anubis> it=schedules.values().iterator(); //least recently used first
+        while(schedules.size() > maxSize && it.hasNext())
+        {
+            it.next().clean();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Wipes and removes all cached key schedules, statistics are kept
+     */
+    public synchronized void clear()
+    {
+        for(Anubis anubis : schedules.values())
+            anubis.clean();
+        schedules.clear();
+    }
+
+    public synchronized int size()
+    {
+        return schedules.size();
+    }
+
+    public synchronized int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "AnubisKeyCache[size="+schedules.size()+"/"+maxSize+", hits="+hits+", misses="+misses+", evictions="+evictions+"]";
+    }
+
+    private static String digest(byte[] key)
+    {
+        SHA1 sha=new SHA1(DIGEST_SIZE);
+        sha.update(key, 0, key.length);
+        sha.generate();
+        String s=ByteUtils.bytesToHex(sha.getDigest());
+        sha.clear();
+        return s;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encrypting filter stream, size of data doesn't have to be known in advance.
+ * Writes AnubisHeader version 1.3 (size UNKNOWN_SIZE) followed by frames:
+ * 4 bytes cipher text length, 4 bytes plain text length, cipher text produced by
+ * Cipher.encrypt over at most chunkSize bytes. Frame with zero lengths ends the stream.
+ * Data is buffered and encrypted a whole chunk at a time, flush() emits a short frame.
+ * Frame lengths aren't protected, frames themselves are as good as the cipher used.
+ * Read back with {@link AnubisInputStream}
+ */
+public class AnubisOutputStream extends FilterOutputStream
+{
+    public static final int DEFAULT_CHUNK_SIZE = 64*1024;
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private final Cipher cipher;
+    private final byte[] chunk; // plain text waiting for encryption
+    private final byte[] frame; // frame header and cipher text
+    private int count = 0;
+    private boolean headerWritten = false;
+    private boolean closed = false;
+
+    public AnubisOutputStream(OutputStream out, Cipher cipher)
+    {
+        this(out, cipher, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out underlying stream
+     * @param cipher cipher encrypting frames, used with stateless encrypt(in, inOff, len, out, outOff) only
+     * @param chunkSize plain text bytes per frame, multiple of 16 keeps block ciphers free of padding
+     */
+    public AnubisOutputStream(OutputStream out, Cipher cipher, int chunkSize)
+    {
+        super(out);
+        if (chunkSize <= 0 || chunkSize > AnubisInputStream.MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        int capacity = cipher.getOutputSize(chunkSize);
+        if (capacity > AnubisInputStream.MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("Chunk size too big: " + chunkSize);
+        this.cipher = cipher;
+        this.chunk = new byte[chunkSize];
+        this.frame = new byte[FRAME_HEADER_SIZE + capacity];
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureOpen();
+        chunk[count++] = (byte)b;
+        if (count == chunk.length)
+            writeChunk();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        while (len > 0)
+        {
+            if (count == 0 && len >= chunk.length) // whole chunk straight from caller's array
+            {
+                writeFrame(b, off, chunk.length);
+                off += chunk.length;
+                len -= chunk.length;
+                continue;
+            }
+            int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == chunk.length)
+                writeChunk();
+        }
+    }
+
+    /**
+     * Encrypts buffered data as a short frame and flushes underlying stream
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+        if (count > 0)
+            writeChunk();
+        out.flush();
+    }
+
+    /**
+     * Writes pending data and end of stream frame, wipes buffers and closes underlying stream
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        try
+        {
+            if (count > 0)
+                writeChunk();
+            writeHeader();
+            Arrays.fill(frame, 0, FRAME_HEADER_SIZE, (byte)0);
+            out.write(frame, 0, FRAME_HEADER_SIZE);
+            out.flush();
+        }
+        finally
+        {
+            closed = true;
+            Arrays.fill(chunk, (byte)0);
+            Arrays.fill(frame, (byte)0);
+            out.close();
+        }
+    }
+
+    private void writeChunk() throws IOException
+    {
+        writeFrame(chunk, 0, count);
+        count = 0;
+    }
+
+    private void writeFrame(byte[] b, int off, int len) throws IOException
+    {
+        writeHeader();
+        int size = cipher.encrypt(b, off, len, frame, FRAME_HEADER_SIZE);
+        ByteUtils.intToByteArray(size, frame, 0);
+        ByteUtils.intToByteArray(len, frame, 4);
+        out.write(frame, 0, FRAME_HEADER_SIZE + size);
+    }
+
+    private void writeHeader() throws IOException
+    {
+        if (headerWritten)
+            return;
+        out.write(new AnubisHeader(AnubisHeader.HI_VERSION, AnubisHeader.LO_VERSION_FRAMED, AnubisHeader.UNKNOWN_SIZE).getHeader());
+        headerWritten = true;
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * PMAC1 (Black and Rogaway) over the 128-bit Anubis block.
+ *
+ * Block i of the message (1-based, all but the last) contributes E_K(M_i xor Z_i) to a
+ * running xor sum, where the offset Z_i depends only on i: it is the xor of L(k) = L*x^k
+ * over the bits k set in the Gray code of i, with L = E_K(0^128). Blocks can therefore
+ * be whitened and encrypted in bulk, in any order and on any number of threads, and
+ * partial sums combined at the end. The last block is added as is (xor L*x^-1) when
+ * complete or 10* padded otherwise, and the tag is E_K of the sum.
+ *
+ * An instance accumulates one message at a time through {@link #update} and must not be
+ * shared between threads for that; {@link #mac(FileChannel, long, long)} keeps its state
+ * in locals and may be called concurrently. The {@link AnubisKey} underneath may be shared.
+ */
+public final class AnubisPMAC
+{
+    public static final int BLOCK_SIZE = 16;
+    public static final int MAC_SIZE = 16;
+    private static final int BATCH_BLOCKS = 64; // blocks whitened and encrypted per bulk call
+    private static final int PARALLEL_BYTES = 64*1024; // smallest part worth a worker thread
+    private static final int FILE_CHUNK = 1024*1024; // read size of a worker, multiple of 16
+
+    private final AnubisKey key;
+    private final boolean ownsKey; // key was expanded here, clean() wipes it
+    private final long[] offsets = new long[2*64]; // L(k) for k = 0..63, high and low halves
+    private long lInvHi, lInvLo; // L*x^-1
+
+    private final long[] sigma = new long[2]; // running sum, high and low halves
+    private long blocks = 0; // number of blocks summed so far
+    private final byte[] buffer = new byte[BLOCK_SIZE]; // last, not yet processed block
+    private int bufferLength = 0;
+    private final byte[] batch = new byte[BATCH_BLOCKS*BLOCK_SIZE];
+
+    /**
+     * @param key   The 32N-bit cipher key.
+     */
+    public AnubisPMAC(byte[/*4*N*/] key)
+    {
+        this(new AnubisKey(key, true), true);
+    }
+
+    /**
+     * @param key   key schedule, may be encrypt-only. {@link #clean()} leaves it alone.
+     */
+    public AnubisPMAC(AnubisKey key)
+    {
+        this(key, false);
+    }
+
+    private AnubisPMAC(AnubisKey key, boolean ownsKey)
+    {
+        this.key = key;
+        this.ownsKey = ownsKey;
+        byte[] l = new byte[BLOCK_SIZE];
+        key.encryptBlock(l, 0, l, 0);
+        long hi = getLong(l, 0), lo = getLong(l, 8);
+        // L*x^-1: shift right, folding x^-1 = x^127 + x^6 + x + 1 in when the low bit is set
+        long mask = -(lo & 1);
+        lInvLo = (lo >>> 1 | hi << 63) ^ (mask & 0x43L);
+        lInvHi = (hi >>> 1) ^ (mask & 0x8000000000000000L);
+        for (int k = 0; k < 64; k++)
+        {
+            offsets[2*k] = hi;
+            offsets[2*k + 1] = lo;
+            long carry = hi >> 63;
+            hi = (hi << 1) | (lo >>> 63);
+            lo = (lo << 1) ^ (carry & 0x87);
+        }
+        Arrays.fill(l, (byte)0);
+    }
+
+    /**
+     * Add message bytes. Large inputs are summed across the shared worker threads.
+     */
+    public void update(byte[] in, int off, int len)
+    {
+        if (len == 0)
+        {
+            return;
+        }
+        if (bufferLength < BLOCK_SIZE)
+        {
+            int n = Math.min(len, BLOCK_SIZE - bufferLength);
+            System.arraycopy(in, off, buffer, bufferLength, n);
+            bufferLength += n;
+            off += n;
+            len -= n;
+            if (len == 0)
+            {
+                return;
+            }
+        }
+        // more data follows, so the buffered block is not the last one:
+        sum(buffer, 0, blocks + 1, 1, sigma, batch);
+        blocks++;
+        int nBlocks = (len - 1)/BLOCK_SIZE;
+        sum(in, off, blocks + 1, nBlocks, sigma, Parallel.parts(nBlocks*(long)BLOCK_SIZE, PARALLEL_BYTES));
+        blocks += nBlocks;
+        off += nBlocks*BLOCK_SIZE;
+        len -= nBlocks*BLOCK_SIZE;
+        System.arraycopy(in, off, buffer, 0, len);
+        bufferLength = len;
+    }
+
+    /**
+     * Finish the message and start over.
+     *
+     * @param out       buffer receiving the 16-byte MAC.
+     * @param outOff    offset of the MAC in out.
+     */
+    public void doFinal(byte[] out, int outOff)
+    {
+        finish(sigma, buffer, bufferLength, out, outOff);
+        reset();
+    }
+
+    /**
+     * Finish the message and start over.
+     *
+     * @return the 16-byte MAC.
+     */
+    public byte[] doFinal()
+    {
+        byte[] mac = new byte[MAC_SIZE];
+        doFinal(mac, 0);
+        return mac;
+    }
+
+    /**
+     * MAC a whole message, discarding any unfinished one.
+     */
+    public byte[] mac(byte[] in, int off, int len)
+    {
+        reset();
+        update(in, off, len);
+        return doFinal();
+    }
+
+    /**
+     * Discard the message accumulated so far.
+     */
+    public void reset()
+    {
+        sigma[0] = 0;
+        sigma[1] = 0;
+        blocks = 0;
+        Arrays.fill(buffer, (byte)0);
+        bufferLength = 0;
+    }
+
+    /**
+     * Overwrite the L-derived offsets and the message state with zeros, also the key schedule
+     * if it was expanded by this instance. The instance can't be used afterwards.
+     */
+    public void clean()
+    {
+        reset();
+        Arrays.fill(offsets, 0L);
+        lInvHi = 0;
+        lInvLo = 0;
+        Arrays.fill(batch, (byte)0);
+        if (ownsKey)
+        {
+            key.clean();
+        }
+    }
+
+    /**
+     * MAC a region of a file. Chunks of the region are read with positional reads and
+     * summed on the shared worker threads; the channel position is not changed and the
+     * message accumulated through {@link #update} is left alone.
+     *
+     * @param channel   file to read.
+     * @param position  start of the region.
+     * @param length    length of the region.
+     * @return the 16-byte MAC.
+     * @throws IOException if reading fails or the file ends before the region does.
+     */
+    public byte[] mac(final FileChannel channel, final long position, long length) throws IOException
+    {
+        final long nBlocks = (length == 0) ? 0 : (length - 1)/BLOCK_SIZE; // all but the last block
+        final long nChunks = (nBlocks*BLOCK_SIZE + FILE_CHUNK - 1)/FILE_CHUNK;
+        int parts = (int)Math.max(1, Math.min(nChunks, Parallel.parts(nBlocks*BLOCK_SIZE, FILE_CHUNK)));
+        final long[][] sums = new long[parts][2];
+        Runnable[] tasks = new Runnable[parts];
+        for (int p = 0; p < parts; p++)
+        {
+            final long from = nChunks*p/parts;
+            final long to = nChunks*(p + 1)/parts;
+            final long[] acc = sums[p];
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    byte[] chunk = new byte[FILE_CHUNK];
+                    byte[] scratch = new byte[BATCH_BLOCKS*BLOCK_SIZE];
+                    try
+                    {
+                        for (long c = from; c < to; c++)
+                        {
+                            long first = c*(FILE_CHUNK/BLOCK_SIZE);
+                            int n = (int)Math.min(FILE_CHUNK/BLOCK_SIZE, nBlocks - first);
+                            readFully(channel, position + first*BLOCK_SIZE, chunk, n*BLOCK_SIZE);
+                            sum(chunk, 0, first + 1, n, acc, scratch);
+                        }
+                    }
+                    catch (IOException ex)
+                    {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            };
+        }
+        try
+        {
+            Parallel.invokeAll(tasks);
+        }
+        catch (RuntimeException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+            {
+                throw (IOException)ex.getCause();
+            }
+            throw ex;
+        }
+        long[] acc = new long[2];
+        for (int p = 0; p < parts; p++)
+        {
+            acc[0] ^= sums[p][0];
+            acc[1] ^= sums[p][1];
+        }
+        int tail = (int)(length - nBlocks*BLOCK_SIZE);
+        byte[] last = new byte[BLOCK_SIZE];
+        readFully(channel, position + nBlocks*BLOCK_SIZE, last, tail);
+        byte[] mac = new byte[MAC_SIZE];
+        finish(acc, last, tail, mac, 0);
+        return mac;
+    }
+
+    private static void readFully(FileChannel channel, long position, byte[] b, int len) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.wrap(b, 0, len);
+        while (bb.hasRemaining())
+        {
+            if (channel.read(bb, position + bb.position()) < 0)
+            {
+                throw new EOFException("File ends before the MAC region.");
+            }
+        }
+    }
+
+    /**
+     * Sum blocks first .. first + nBlocks - 1 into acc, split into the given number of parts.
+     */
+    private void sum(final byte[] in, final int off, final long first, int nBlocks, long[] acc, int parts)
+    {
+        parts = Math.max(1, Math.min(parts, nBlocks/BATCH_BLOCKS));
+        if (parts == 1)
+        {
+            sum(in, off, first, nBlocks, acc, batch);
+            return;
+        }
+        final long[][] sums = new long[parts][2];
+        Runnable[] tasks = new Runnable[parts];
+        for (int p = 0; p < parts; p++)
+        {
+            final int from = (int)((long)nBlocks*p/parts);
+            final int to = (int)((long)nBlocks*(p + 1)/parts);
+            final long[] part = sums[p];
+            final byte[] scratch = (p == 0) ? batch : new byte[BATCH_BLOCKS*BLOCK_SIZE];
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    sum(in, off + from*BLOCK_SIZE, first + from, to - from, part, scratch);
+                }
+            };
+        }
+        Parallel.invokeAll(tasks);
+        for (int p = 0; p < parts; p++)
+        {
+            acc[0] ^= sums[p][0];
+            acc[1] ^= sums[p][1];
+        }
+    }
+
+    /**
+     * Sum blocks first .. first + nBlocks - 1 into acc on the calling thread,
+     * a batch at a time: whiten into scratch, bulk encrypt, xor together.
+     */
+    private void sum(byte[] in, int off, long first, int nBlocks, long[] acc, byte[] scratch)
+    {
+        // Z_{first-1} from the Gray code of first - 1:
+        long zHi = 0, zLo = 0;
+        for (long g = (first - 1) ^ ((first - 1) >>> 1), k = 0; g != 0; g >>>= 1, k++)
+        {
+            if ((g & 1) != 0)
+            {
+                zHi ^= offsets[(int)(2*k)];
+                zLo ^= offsets[(int)(2*k + 1)];
+            }
+        }
+        long sHi = acc[0], sLo = acc[1];
+        long i = first;
+        int batchBlocks = scratch.length/BLOCK_SIZE;
+        while (nBlocks > 0)
+        {
+            int n = Math.min(nBlocks, batchBlocks);
+            for (int b = 0, pos = 0; b < n; b++, i++, pos += BLOCK_SIZE, off += BLOCK_SIZE)
+            {
+                int k = 2*Long.numberOfTrailingZeros(i);
+                zHi ^= offsets[k];
+                zLo ^= offsets[k + 1];
+                putLong(getLong(in, off) ^ zHi, scratch, pos);
+                putLong(getLong(in, off + 8) ^ zLo, scratch, pos + 8);
+            }
+            key.encryptBlocks(scratch, 0, scratch, 0, n);
+            for (int pos = 0; pos < n*BLOCK_SIZE; pos += BLOCK_SIZE)
+            {
+                sHi ^= getLong(scratch, pos);
+                sLo ^= getLong(scratch, pos + 8);
+            }
+            nBlocks -= n;
+        }
+        acc[0] = sHi;
+        acc[1] = sLo;
+    }
+
+    private void finish(long[] acc, byte[] last, int lastLength, byte[] out, int outOff)
+    {
+        long hi = acc[0], lo = acc[1];
+        if (lastLength == BLOCK_SIZE)
+        {
+            hi ^= lInvHi;
+            lo ^= lInvLo;
+        }
+        else
+        {
+            last[lastLength] = (byte)0x80;
+            Arrays.fill(last, lastLength + 1, BLOCK_SIZE, (byte)0);
+        }
+        putLong(hi ^ getLong(last, 0), out, outOff);
+        putLong(lo ^ getLong(last, 8), out, outOff + 8);
+        key.encryptBlock(out, outOff, out, outOff);
+    }
+
+    private static long getLong(byte[] b, int off)
+    {
+        return ((long)(b[off    ]       ) << 56) |
+               ((long)(b[off + 1] & 0xff) << 48) |
+               ((long)(b[off + 2] & 0xff) << 40) |
+               ((long)(b[off + 3] & 0xff) << 32) |
+               ((long)(b[off + 4] & 0xff) << 24) |
+               ((long)(b[off + 5] & 0xff) << 16) |
+               ((long)(b[off + 6] & 0xff) <<  8) |
+               ((long)(b[off + 7] & 0xff)      );
+    }
+
+    private static void putLong(long v, byte[] b, int off)
+    {
+        b[off    ] = (byte)(v >>> 56);
+        b[off + 1] = (byte)(v >>> 48);
+        b[off + 2] = (byte)(v >>> 40);
+        b[off + 3] = (byte)(v >>> 32);
+        b[off + 4] = (byte)(v >>> 24);
+        b[off + 5] = (byte)(v >>> 16);
+        b[off + 6] = (byte)(v >>>  8);
+        b[off + 7] = (byte)(v       );
+    }
+}
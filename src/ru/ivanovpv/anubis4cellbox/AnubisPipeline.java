@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pipelined legacy format encryption: a reader thread fills chunks, cipher workers encrypt or decrypt
+ * them, the calling thread writes them out in order. Stages are connected by bounded queues of
+ * <code>depth</code> reusable chunks, so reading, encryption and writing overlap while memory stays
+ * at depth*chunkSize. Output is byte-identical to CipherAnubis.encrypt(InputStream, OutputStream, long).
+ * Every run reports per-stage utilisation, the stage close to 100% limits throughput.
+ * One pipeline may be used by one thread at a time
+ */
+public class AnubisPipeline
+{
+    public static final int DEFAULT_CHUNK_SIZE = 1024*1024;
+    public static final int DEFAULT_DEPTH = 4;
+    private static final int BLOCK_SIZE = 16;
+    private static final long STOP_MILLIS = 1000; // wait for the stages of a failed run before wiping
+
+    private final CipherAnubis cipher;
+    private final int workers;
+    private final Chunk[] chunks;
+
+    /**
+     * Per-run numbers, busy times are spent doing the stage's work, not waiting on queues
+     */
+    public static final class Stats
+    {
+        // each field has a single writer: readBusy the reader, cryptBusy the workers through addCrypt,
+        // the rest the calling thread; Stats is handed out only after the stages were joined
+        private long bytes;
+        private long elapsed;
+        private long readBusy;
+        private long cryptBusy;
+        private long writeBusy;
+        private final int workers;
+
+        Stats(int workers)
+        {
+            this.workers = workers;
+        }
+
+        /**
+         * @return plain text bytes processed
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsed;
+        }
+
+        /**
+         * @return fraction of time the reader spent reading input
+         */
+        public double getReaderUtilization()
+        {
+            return utilization(readBusy, 1);
+        }
+
+        /**
+         * @return fraction of time workers spent in the cipher, averaged over workers
+         */
+        public double getWorkerUtilization()
+        {
+            return utilization(cryptBusy, workers);
+        }
+
+        /**
+         * @return fraction of time the writer spent writing output
+         */
+        public double getWriterUtilization()
+        {
+            return utilization(writeBusy, 1);
+        }
+
+        /**
+         * @return throughput in MB/s
+         */
+        public double getThroughput()
+        {
+            return (elapsed == 0) ? 0 : bytes*1000.0/elapsed;
+        }
+
+        private double utilization(long busy, int threads)
+        {
+            return (elapsed == 0) ? 0 : (double)busy/elapsed/threads;
+        }
+
+        private synchronized void addCrypt(long nanos)
+        {
+            cryptBusy += nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return bytes + " bytes, " + Math.round(getThroughput()) + " MB/s, reader " + percent(getReaderUtilization()) +
+                    ", " + workers + " worker(s) " + percent(getWorkerUtilization()) + ", writer " + percent(getWriterUtilization());
+        }
+
+        private static String percent(double u)
+        {
+            return Math.round(100*u) + "%";
+        }
+    }
+
+    private static final class Chunk
+    {
+        final byte[] data;
+        int length; // bytes read
+        int outLength; // bytes to write
+        boolean done;
+
+        Chunk(int size)
+        {
+            data = new byte[size];
+        }
+
+        synchronized void finish(int n)
+        {
+            outLength = n;
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits until a worker finished this chunk or the run failed
+         * @return false when the run failed
+         */
+        synchronized boolean await(Run run) throws InterruptedException
+        {
+            while (!done && run.error == null)
+            {
+                wait(100);
+            }
+            return done;
+        }
+    }
+
+    private static final Chunk END = new Chunk(0); // end of input marker
+
+    /**
+     * Pipeline with DEFAULT_CHUNK_SIZE chunks, DEFAULT_DEPTH of them and one worker per processor
+     */
+    public AnubisPipeline(CipherAnubis cipher)
+    {
+        this(cipher, DEFAULT_CHUNK_SIZE, DEFAULT_DEPTH, Parallel.THREADS);
+    }
+
+    /**
+     * @param cipher cipher shared by workers
+     * @param chunkSize bytes read and encrypted at once, multiple of 16
+     * @param depth number of chunks in flight, at least 2 for reading and writing to overlap
+     * @param workers number of cipher threads
+     */
+    public AnubisPipeline(CipherAnubis cipher, int chunkSize, int depth, int workers)
+    {
+        if (chunkSize < BLOCK_SIZE || chunkSize%BLOCK_SIZE != 0)
+            throw new IllegalArgumentException("Chunk size has to be a positive multiple of 16: " + chunkSize);
+        if (depth < 1 || workers < 1)
+            throw new IllegalArgumentException("Invalid depth " + depth + " or workers " + workers);
+        this.cipher = cipher;
+        this.workers = workers;
+        this.chunks = new Chunk[depth];
+        for (int i = 0; i < depth; i++)
+        {
+            chunks[i] = new Chunk(chunkSize);
+        }
+    }
+
+    /**
+     * Encrypts <code>size</code> bytes of <code>is</code> into <code>os</code> in legacy format
+     * @throws java.io.EOFException when input ends before <code>size</code> bytes
+     */
+    public Stats encrypt(InputStream is, OutputStream os, long size) throws IOException
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("Negative size");
+        os.write(new AnubisHeader(size).getHeader());
+        return run(is, os, size, Long.MAX_VALUE, true); // whole padded blocks are written
+    }
+
+    /**
+     * Decrypts legacy format stream, padding is stripped using size stored in header
+     */
+    public Stats decrypt(InputStream is, OutputStream os) throws IOException
+    {
+        byte[] header = new byte[AnubisHeader.HEADER_SIZE];
+        ByteUtils.readFully(is, header, 0, header.length);
+        long size = CipherAnubis.legacySize(new AnubisHeader(header));
+        return run(is, os, CipherAnubis.legacyLength(size), size, false);
+    }
+
+    /**
+     * State of one run shared by its stages
+     */
+    private final class Run
+    {
+        final InputStream is;
+        final long inSize; // bytes to read
+        final boolean encrypt;
+        final BlockingQueue<Chunk> free; // chunks owned by the reader
+        final BlockingQueue<Chunk> work;
+        final BlockingQueue<Chunk> ordered; // chunks in input order, for the writer
+        final Stats stats = new Stats(workers);
+        final Thread[] threads = new Thread[workers + 1];
+        volatile Throwable error = null;
+
+        Run(InputStream is, long inSize, boolean encrypt)
+        {
+            this.is = is;
+            this.inSize = inSize;
+            this.encrypt = encrypt;
+            this.free = new ArrayBlockingQueue<Chunk>(chunks.length, false, Arrays.asList(chunks));
+            this.work = new ArrayBlockingQueue<Chunk>(chunks.length + workers);
+            this.ordered = new ArrayBlockingQueue<Chunk>(chunks.length + 1);
+        }
+
+        void read()
+        {
+            Chunk c = null; // taken from free but not yet handed on
+            try
+            {
+                long pos = 0;
+                do
+                {
+                    c = free.take();
+                    c.length = (int)Math.min(c.data.length, inSize - pos);
+                    c.done = false;
+                    long start = System.nanoTime();
+                    ByteUtils.readFully(is, c.data, 0, c.length);
+                    stats.readBusy += System.nanoTime() - start;
+                    if (error != null)
+                        break; // failed while blocked in read, the other stages may be gone
+                    pos += c.length;
+                    ordered.put(c);
+                    work.put(c);
+                    c = null;
+                }
+                while (pos < inSize && error == null);
+                for (int i = 0; i < workers; i++)
+                {
+                    work.put(END);
+                }
+                ordered.put(END);
+            }
+            catch (Throwable t)
+            {
+                fail(t);
+                ordered.offer(END); // writer may be waiting for the next chunk, there is always room
+            }
+            finally
+            {
+                if (c != null)
+                    Arrays.fill(c.data, (byte)0);
+            }
+        }
+
+        void crypt()
+        {
+            Chunk c = null; // being encrypted or decrypted
+            try
+            {
+                for (c = work.take(); c != END; c = work.take())
+                {
+                    long start = System.nanoTime();
+                    int n = c.length;
+                    if (encrypt)
+                        n = cipher.encryptChunk(c.data, c.length);
+                    else
+                        cipher.decryptChunk(c.data, c.length);
+                    stats.addCrypt(System.nanoTime() - start);
+                    if (error != null)
+                        Arrays.fill(c.data, (byte)0); // the run failed meanwhile, its wipe may be over
+                    c.finish(n);
+                    c = null;
+                }
+            }
+            catch (Throwable t)
+            {
+                fail(t);
+                if (c != null)
+                    Arrays.fill(c.data, (byte)0);
+            }
+        }
+
+        void write(OutputStream os, long outSize) throws IOException, InterruptedException
+        {
+            long pos = 0;
+            for (Chunk c = ordered.take(); c != END; c = ordered.take())
+            {
+                if (!c.await(this))
+                    return;
+                int n = (int)Math.min(c.outLength, outSize - pos);
+                long start = System.nanoTime();
+                os.write(c.data, 0, n);
+                stats.writeBusy += System.nanoTime() - start;
+                pos += n;
+                free.put(c);
+            }
+            stats.bytes = encrypt ? inSize : outSize;
+        }
+
+        void fail(Throwable t)
+        {
+            synchronized (this)
+            {
+                if (error == null)
+                    error = t;
+            }
+            for (int i = 0; i < threads.length; i++)
+            {
+                if (threads[i] != null && threads[i] != Thread.currentThread())
+                    threads[i].interrupt();
+            }
+        }
+    }
+
+    private Stats run(InputStream is, OutputStream os, long inSize, long outSize, boolean encrypt) throws IOException
+    {
+        final Run run = new Run(is, inSize, encrypt);
+        long start = System.nanoTime();
+        run.threads[0] = new Thread("Anubis pipeline reader")
+        {
+            @Override
+            public void run()
+            {
+                run.read();
+            }
+        };
+        for (int i = 1; i <= workers; i++)
+        {
+            run.threads[i] = new Thread("Anubis pipeline worker " + i)
+            {
+                @Override
+                public void run()
+                {
+                    run.crypt();
+                }
+            };
+        }
+        for (int i = 0; i < run.threads.length; i++)
+        {
+            run.threads[i].setDaemon(true);
+            run.threads[i].start();
+        }
+        try
+        {
+            run.write(os, outSize);
+            if (run.error == null)
+            {
+                for (int i = 0; i < run.threads.length; i++)
+                {
+                    run.threads[i].join();
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            run.fail(ex);
+        }
+        catch (IOException ex)
+        {
+            run.fail(ex);
+        }
+        catch (RuntimeException ex)
+        {
+            run.fail(ex);
+        }
+        finally
+        {
+            if (run.error != null)
+                awaitStages(run);
+            for (int i = 0; i < chunks.length; i++)
+            {
+                Arrays.fill(chunks[i].data, (byte)0);
+            }
+        }
+        run.stats.elapsed = System.nanoTime() - start;
+        if (run.error != null)
+        {
+            resetChunks();
+            if (run.error instanceof IOException)
+                throw (IOException)run.error;
+            if (run.error instanceof InterruptedException)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Anubis pipeline interrupted");
+            }
+            if (run.error instanceof RuntimeException)
+                throw (RuntimeException)run.error;
+            if (run.error instanceof Error)
+                throw (Error)run.error;
+            throw new RuntimeException(run.error);
+        }
+        return run.stats;
+    }
+
+    /**
+     * Gives the stages of a failed run up to STOP_MILLIS to exit. A reader blocked in a read that
+     * ignores interrupts may outlast the wait, so every stage also wipes the chunk it holds as it exits
+     */
+    private static void awaitStages(Run run)
+    {
+        long deadline = System.currentTimeMillis() + STOP_MILLIS;
+        try
+        {
+            for (int i = 0; i < run.threads.length; i++)
+            {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0)
+                    break;
+                run.threads[i].join(left);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * After a failure stopped stages may still hold chunks of the failed run, give the next run fresh ones
+     */
+    private void resetChunks()
+    {
+        for (int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = new Chunk(chunks[i].data.length);
+        }
+    }
+}
@@ -0,0 +1,3271 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+/**
+ * Fully unrolled Anubis crypt routines, one per number of rounds.
+ * {@link #forRounds(int)} is called once at key setup, so single blocks
+ * and bulk runs go straight to the routine of the key size.
+ *
+ * Generated by Anubis.makeUnrolledCrypt() -- do not edit by hand.
+ */
+abstract class AnubisUnrolled
+{
+    private static final int[] T0 = Anubis.T0;
+    private static final int[] T1 = Anubis.T1;
+    private static final int[] T2 = Anubis.T2;
+    private static final int[] T3 = Anubis.T3;
+
+    private static final AnubisUnrolled[] ROUNDS =
+    {
+        new Rounds12(),
+        new Rounds13(),
+        new Rounds14(),
+        new Rounds15(),
+        new Rounds16(),
+        new Rounds17(),
+        new Rounds18()
+    };
+
+    private AnubisUnrolled()
+    {}
+
+    /**
+     * @param R   number of rounds, 12 .. 18.
+     * @return the unrolled routines for <code>R</code> rounds.
+     */
+    static AnubisUnrolled forRounds(int R)
+    {
+        return ROUNDS[R - 12];
+    }
+
+    /**
+     * Either encrypt or decrypt a data block, according to the key schedule.
+     */
+    abstract void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k);
+
+    /**
+     * Either encrypt or decrypt a run of consecutive data blocks, according to the key schedule.
+     */
+    abstract void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k);
+
+    private static final class Rounds12 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt12(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt12(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds13 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt13(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt13(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds14 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt14(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt14(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds15 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt15(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt15(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds16 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt16(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt16(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds17 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt17(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt17(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    private static final class Rounds18 extends AnubisUnrolled
+    {
+        void crypt(byte[] in, int inOff, byte[] out, int outOff, int[] k)
+        {
+            crypt18(in, inOff, out, outOff, k);
+        }
+
+        void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks, int[] k)
+        {
+            for (; nBlocks > 0; nBlocks--, srcOff += 16, dstOff += 16)
+            {
+                crypt18(src, srcOff, dst, dstOff, k);
+            }
+        }
+    }
+
+    /**
+     * Either encrypt or decrypt a data block with a 128-bit key schedule (12 rounds).
+     */
+    static void crypt12(byte[] in, int inOff, byte[] out, int outOff, int[/*52*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // last round:
+        s0 =
+                (T0[(t0 >>> 24)       ] & 0xff000000) ^
+                (T1[(t1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(t2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(t3 >>> 24)       ] & 0x000000ff) ^
+                k[48];
+        s1 =
+                (T0[(t0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[49];
+        s2 =
+                (T0[(t0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[50];
+        s3 =
+                (T0[(t0       ) & 0xff] & 0xff000000) ^
+                (T1[(t1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(t2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(t3       ) & 0xff] & 0x000000ff) ^
+                k[51];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(s0 >>> 24);
+        out[outOff +  1] = (byte)(s0 >>> 16);
+        out[outOff +  2] = (byte)(s0 >>>  8);
+        out[outOff +  3] = (byte)(s0       );
+        out[outOff +  4] = (byte)(s1 >>> 24);
+        out[outOff +  5] = (byte)(s1 >>> 16);
+        out[outOff +  6] = (byte)(s1 >>>  8);
+        out[outOff +  7] = (byte)(s1       );
+        out[outOff +  8] = (byte)(s2 >>> 24);
+        out[outOff +  9] = (byte)(s2 >>> 16);
+        out[outOff + 10] = (byte)(s2 >>>  8);
+        out[outOff + 11] = (byte)(s2       );
+        out[outOff + 12] = (byte)(s3 >>> 24);
+        out[outOff + 13] = (byte)(s3 >>> 16);
+        out[outOff + 14] = (byte)(s3 >>>  8);
+        out[outOff + 15] = (byte)(s3       );
+    } // crypt12
+
+    /**
+     * Either encrypt or decrypt a data block with a 160-bit key schedule (13 rounds).
+     */
+    static void crypt13(byte[] in, int inOff, byte[] out, int outOff, int[/*56*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // last round:
+        t0 =
+                (T0[(s0 >>> 24)       ] & 0xff000000) ^
+                (T1[(s1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(s2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(s3 >>> 24)       ] & 0x000000ff) ^
+                k[52];
+        t1 =
+                (T0[(s0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[53];
+        t2 =
+                (T0[(s0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[54];
+        t3 =
+                (T0[(s0       ) & 0xff] & 0xff000000) ^
+                (T1[(s1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(s2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(s3       ) & 0xff] & 0x000000ff) ^
+                k[55];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(t0 >>> 24);
+        out[outOff +  1] = (byte)(t0 >>> 16);
+        out[outOff +  2] = (byte)(t0 >>>  8);
+        out[outOff +  3] = (byte)(t0       );
+        out[outOff +  4] = (byte)(t1 >>> 24);
+        out[outOff +  5] = (byte)(t1 >>> 16);
+        out[outOff +  6] = (byte)(t1 >>>  8);
+        out[outOff +  7] = (byte)(t1       );
+        out[outOff +  8] = (byte)(t2 >>> 24);
+        out[outOff +  9] = (byte)(t2 >>> 16);
+        out[outOff + 10] = (byte)(t2 >>>  8);
+        out[outOff + 11] = (byte)(t2       );
+        out[outOff + 12] = (byte)(t3 >>> 24);
+        out[outOff + 13] = (byte)(t3 >>> 16);
+        out[outOff + 14] = (byte)(t3 >>>  8);
+        out[outOff + 15] = (byte)(t3       );
+    } // crypt13
+
+    /**
+     * Either encrypt or decrypt a data block with a 192-bit key schedule (14 rounds).
+     */
+    static void crypt14(byte[] in, int inOff, byte[] out, int outOff, int[/*60*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // round 13:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[52];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[53];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[54];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[55];
+
+        // last round:
+        s0 =
+                (T0[(t0 >>> 24)       ] & 0xff000000) ^
+                (T1[(t1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(t2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(t3 >>> 24)       ] & 0x000000ff) ^
+                k[56];
+        s1 =
+                (T0[(t0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[57];
+        s2 =
+                (T0[(t0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[58];
+        s3 =
+                (T0[(t0       ) & 0xff] & 0xff000000) ^
+                (T1[(t1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(t2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(t3       ) & 0xff] & 0x000000ff) ^
+                k[59];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(s0 >>> 24);
+        out[outOff +  1] = (byte)(s0 >>> 16);
+        out[outOff +  2] = (byte)(s0 >>>  8);
+        out[outOff +  3] = (byte)(s0       );
+        out[outOff +  4] = (byte)(s1 >>> 24);
+        out[outOff +  5] = (byte)(s1 >>> 16);
+        out[outOff +  6] = (byte)(s1 >>>  8);
+        out[outOff +  7] = (byte)(s1       );
+        out[outOff +  8] = (byte)(s2 >>> 24);
+        out[outOff +  9] = (byte)(s2 >>> 16);
+        out[outOff + 10] = (byte)(s2 >>>  8);
+        out[outOff + 11] = (byte)(s2       );
+        out[outOff + 12] = (byte)(s3 >>> 24);
+        out[outOff + 13] = (byte)(s3 >>> 16);
+        out[outOff + 14] = (byte)(s3 >>>  8);
+        out[outOff + 15] = (byte)(s3       );
+    } // crypt14
+
+    /**
+     * Either encrypt or decrypt a data block with a 224-bit key schedule (15 rounds).
+     */
+    static void crypt15(byte[] in, int inOff, byte[] out, int outOff, int[/*64*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // round 13:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[52];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[53];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[54];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[55];
+
+        // round 14:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[56];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[57];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[58];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[59];
+
+        // last round:
+        t0 =
+                (T0[(s0 >>> 24)       ] & 0xff000000) ^
+                (T1[(s1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(s2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(s3 >>> 24)       ] & 0x000000ff) ^
+                k[60];
+        t1 =
+                (T0[(s0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[61];
+        t2 =
+                (T0[(s0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[62];
+        t3 =
+                (T0[(s0       ) & 0xff] & 0xff000000) ^
+                (T1[(s1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(s2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(s3       ) & 0xff] & 0x000000ff) ^
+                k[63];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(t0 >>> 24);
+        out[outOff +  1] = (byte)(t0 >>> 16);
+        out[outOff +  2] = (byte)(t0 >>>  8);
+        out[outOff +  3] = (byte)(t0       );
+        out[outOff +  4] = (byte)(t1 >>> 24);
+        out[outOff +  5] = (byte)(t1 >>> 16);
+        out[outOff +  6] = (byte)(t1 >>>  8);
+        out[outOff +  7] = (byte)(t1       );
+        out[outOff +  8] = (byte)(t2 >>> 24);
+        out[outOff +  9] = (byte)(t2 >>> 16);
+        out[outOff + 10] = (byte)(t2 >>>  8);
+        out[outOff + 11] = (byte)(t2       );
+        out[outOff + 12] = (byte)(t3 >>> 24);
+        out[outOff + 13] = (byte)(t3 >>> 16);
+        out[outOff + 14] = (byte)(t3 >>>  8);
+        out[outOff + 15] = (byte)(t3       );
+    } // crypt15
+
+    /**
+     * Either encrypt or decrypt a data block with a 256-bit key schedule (16 rounds).
+     */
+    static void crypt16(byte[] in, int inOff, byte[] out, int outOff, int[/*68*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // round 13:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[52];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[53];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[54];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[55];
+
+        // round 14:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[56];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[57];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[58];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[59];
+
+        // round 15:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[60];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[61];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[62];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[63];
+
+        // last round:
+        s0 =
+                (T0[(t0 >>> 24)       ] & 0xff000000) ^
+                (T1[(t1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(t2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(t3 >>> 24)       ] & 0x000000ff) ^
+                k[64];
+        s1 =
+                (T0[(t0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[65];
+        s2 =
+                (T0[(t0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[66];
+        s3 =
+                (T0[(t0       ) & 0xff] & 0xff000000) ^
+                (T1[(t1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(t2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(t3       ) & 0xff] & 0x000000ff) ^
+                k[67];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(s0 >>> 24);
+        out[outOff +  1] = (byte)(s0 >>> 16);
+        out[outOff +  2] = (byte)(s0 >>>  8);
+        out[outOff +  3] = (byte)(s0       );
+        out[outOff +  4] = (byte)(s1 >>> 24);
+        out[outOff +  5] = (byte)(s1 >>> 16);
+        out[outOff +  6] = (byte)(s1 >>>  8);
+        out[outOff +  7] = (byte)(s1       );
+        out[outOff +  8] = (byte)(s2 >>> 24);
+        out[outOff +  9] = (byte)(s2 >>> 16);
+        out[outOff + 10] = (byte)(s2 >>>  8);
+        out[outOff + 11] = (byte)(s2       );
+        out[outOff + 12] = (byte)(s3 >>> 24);
+        out[outOff + 13] = (byte)(s3 >>> 16);
+        out[outOff + 14] = (byte)(s3 >>>  8);
+        out[outOff + 15] = (byte)(s3       );
+    } // crypt16
+
+    /**
+     * Either encrypt or decrypt a data block with a 288-bit key schedule (17 rounds).
+     */
+    static void crypt17(byte[] in, int inOff, byte[] out, int outOff, int[/*72*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // round 13:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[52];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[53];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[54];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[55];
+
+        // round 14:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[56];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[57];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[58];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[59];
+
+        // round 15:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[60];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[61];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[62];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[63];
+
+        // round 16:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[64];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[65];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[66];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[67];
+
+        // last round:
+        t0 =
+                (T0[(s0 >>> 24)       ] & 0xff000000) ^
+                (T1[(s1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(s2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(s3 >>> 24)       ] & 0x000000ff) ^
+                k[68];
+        t1 =
+                (T0[(s0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[69];
+        t2 =
+                (T0[(s0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(s1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(s2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(s3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[70];
+        t3 =
+                (T0[(s0       ) & 0xff] & 0xff000000) ^
+                (T1[(s1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(s2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(s3       ) & 0xff] & 0x000000ff) ^
+                k[71];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(t0 >>> 24);
+        out[outOff +  1] = (byte)(t0 >>> 16);
+        out[outOff +  2] = (byte)(t0 >>>  8);
+        out[outOff +  3] = (byte)(t0       );
+        out[outOff +  4] = (byte)(t1 >>> 24);
+        out[outOff +  5] = (byte)(t1 >>> 16);
+        out[outOff +  6] = (byte)(t1 >>>  8);
+        out[outOff +  7] = (byte)(t1       );
+        out[outOff +  8] = (byte)(t2 >>> 24);
+        out[outOff +  9] = (byte)(t2 >>> 16);
+        out[outOff + 10] = (byte)(t2 >>>  8);
+        out[outOff + 11] = (byte)(t2       );
+        out[outOff + 12] = (byte)(t3 >>> 24);
+        out[outOff + 13] = (byte)(t3 >>> 16);
+        out[outOff + 14] = (byte)(t3 >>>  8);
+        out[outOff + 15] = (byte)(t3       );
+    } // crypt17
+
+    /**
+     * Either encrypt or decrypt a data block with a 320-bit key schedule (18 rounds).
+     */
+    static void crypt18(byte[] in, int inOff, byte[] out, int outOff, int[/*76*/] k)
+    {
+        int s0, s1, s2, s3, t0, t1, t2, t3;
+
+        // mu and sigma[K^0]:
+        s0 =
+                ((in[inOff     ]       ) << 24) ^
+                ((in[inOff +  1] & 0xff) << 16) ^
+                ((in[inOff +  2] & 0xff) <<  8) ^
+                ((in[inOff +  3] & 0xff)      ) ^
+                k[0];
+        s1 =
+                ((in[inOff +  4]       ) << 24) ^
+                ((in[inOff +  5] & 0xff) << 16) ^
+                ((in[inOff +  6] & 0xff) <<  8) ^
+                ((in[inOff +  7] & 0xff)      ) ^
+                k[1];
+        s2 =
+                ((in[inOff +  8]       ) << 24) ^
+                ((in[inOff +  9] & 0xff) << 16) ^
+                ((in[inOff + 10] & 0xff) <<  8) ^
+                ((in[inOff + 11] & 0xff)      ) ^
+                k[2];
+        s3 =
+                ((in[inOff + 12]       ) << 24) ^
+                ((in[inOff + 13] & 0xff) << 16) ^
+                ((in[inOff + 14] & 0xff) <<  8) ^
+                ((in[inOff + 15] & 0xff)      ) ^
+                k[3];
+
+        // round 1:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[4];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[5];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[6];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[7];
+
+        // round 2:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[8];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[9];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[10];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[11];
+
+        // round 3:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[12];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[13];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[14];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[15];
+
+        // round 4:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[16];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[17];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[18];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[19];
+
+        // round 5:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[20];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[21];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[22];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[23];
+
+        // round 6:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[24];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[25];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[26];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[27];
+
+        // round 7:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[28];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[29];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[30];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[31];
+
+        // round 8:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[32];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[33];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[34];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[35];
+
+        // round 9:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[36];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[37];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[38];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[39];
+
+        // round 10:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[40];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[41];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[42];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[43];
+
+        // round 11:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[44];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[45];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[46];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[47];
+
+        // round 12:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[48];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[49];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[50];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[51];
+
+        // round 13:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[52];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[53];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[54];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[55];
+
+        // round 14:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[56];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[57];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[58];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[59];
+
+        // round 15:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[60];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[61];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[62];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[63];
+
+        // round 16:
+        s0 =
+                T0[(t0 >>> 24)       ] ^
+                T1[(t1 >>> 24)       ] ^
+                T2[(t2 >>> 24)       ] ^
+                T3[(t3 >>> 24)       ] ^
+                k[64];
+        s1 =
+                T0[(t0 >>> 16) & 0xff] ^
+                T1[(t1 >>> 16) & 0xff] ^
+                T2[(t2 >>> 16) & 0xff] ^
+                T3[(t3 >>> 16) & 0xff] ^
+                k[65];
+        s2 =
+                T0[(t0 >>>  8) & 0xff] ^
+                T1[(t1 >>>  8) & 0xff] ^
+                T2[(t2 >>>  8) & 0xff] ^
+                T3[(t3 >>>  8) & 0xff] ^
+                k[66];
+        s3 =
+                T0[(t0       ) & 0xff] ^
+                T1[(t1       ) & 0xff] ^
+                T2[(t2       ) & 0xff] ^
+                T3[(t3       ) & 0xff] ^
+                k[67];
+
+        // round 17:
+        t0 =
+                T0[(s0 >>> 24)       ] ^
+                T1[(s1 >>> 24)       ] ^
+                T2[(s2 >>> 24)       ] ^
+                T3[(s3 >>> 24)       ] ^
+                k[68];
+        t1 =
+                T0[(s0 >>> 16) & 0xff] ^
+                T1[(s1 >>> 16) & 0xff] ^
+                T2[(s2 >>> 16) & 0xff] ^
+                T3[(s3 >>> 16) & 0xff] ^
+                k[69];
+        t2 =
+                T0[(s0 >>>  8) & 0xff] ^
+                T1[(s1 >>>  8) & 0xff] ^
+                T2[(s2 >>>  8) & 0xff] ^
+                T3[(s3 >>>  8) & 0xff] ^
+                k[70];
+        t3 =
+                T0[(s0       ) & 0xff] ^
+                T1[(s1       ) & 0xff] ^
+                T2[(s2       ) & 0xff] ^
+                T3[(s3       ) & 0xff] ^
+                k[71];
+
+        // last round:
+        s0 =
+                (T0[(t0 >>> 24)       ] & 0xff000000) ^
+                (T1[(t1 >>> 24)       ] & 0x00ff0000) ^
+                (T2[(t2 >>> 24)       ] & 0x0000ff00) ^
+                (T3[(t3 >>> 24)       ] & 0x000000ff) ^
+                k[72];
+        s1 =
+                (T0[(t0 >>> 16) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>> 16) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>> 16) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>> 16) & 0xff] & 0x000000ff) ^
+                k[73];
+        s2 =
+                (T0[(t0 >>>  8) & 0xff] & 0xff000000) ^
+                (T1[(t1 >>>  8) & 0xff] & 0x00ff0000) ^
+                (T2[(t2 >>>  8) & 0xff] & 0x0000ff00) ^
+                (T3[(t3 >>>  8) & 0xff] & 0x000000ff) ^
+                k[74];
+        s3 =
+                (T0[(t0       ) & 0xff] & 0xff000000) ^
+                (T1[(t1       ) & 0xff] & 0x00ff0000) ^
+                (T2[(t2       ) & 0xff] & 0x0000ff00) ^
+                (T3[(t3       ) & 0xff] & 0x000000ff) ^
+                k[75];
+
+        // mu^{-1}:
+        out[outOff     ] = (byte)(s0 >>> 24);
+        out[outOff +  1] = (byte)(s0 >>> 16);
+        out[outOff +  2] = (byte)(s0 >>>  8);
+        out[outOff +  3] = (byte)(s0       );
+        out[outOff +  4] = (byte)(s1 >>> 24);
+        out[outOff +  5] = (byte)(s1 >>> 16);
+        out[outOff +  6] = (byte)(s1 >>>  8);
+        out[outOff +  7] = (byte)(s1       );
+        out[outOff +  8] = (byte)(s2 >>> 24);
+        out[outOff +  9] = (byte)(s2 >>> 16);
+        out[outOff + 10] = (byte)(s2 >>>  8);
+        out[outOff + 11] = (byte)(s2       );
+        out[outOff + 12] = (byte)(s3 >>> 24);
+        out[outOff + 13] = (byte)(s3 >>> 16);
+        out[outOff + 14] = (byte)(s3 >>>  8);
+        out[outOff + 15] = (byte)(s3       );
+    } // crypt18
+
+} // AnubisUnrolled
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * Anubis in XTS mode (IEEE P1619) for sector-addressed storage.
+ *
+ * Every sector is encrypted on its own under a tweak derived from its index with a
+ * second key, so any sector can be read or rewritten without touching the others.
+ * Block j of a sector is encrypted as E_K1(P xor T_j) xor T_j with
+ * T_0 = E_K2(sector index, little-endian) and T_{j+1} = T_j * alpha in GF(2^128).
+ * A sector whose length is not a multiple of 16 bytes uses ciphertext stealing, so
+ * ciphertext is always as long as plaintext; sectors must hold at least 16 bytes.
+ *
+ * Instances hold no state besides the keys and may be shared. Bulk calls on several
+ * sectors are split across the shared worker threads.
+ */
+public final class AnubisXTS
+{
+    public static final int BLOCK_SIZE = 16;
+    public static final int DEFAULT_SECTOR_SIZE = 4096;
+    private static final int PARALLEL_BYTES = 64*1024; // smallest part worth a worker thread
+
+    private final AnubisKey dataKey;
+    private final AnubisKey tweakKey;
+    private final int sectorSize;
+
+    /**
+     * @param dataKey   The 32N-bit key encrypting the data (K1).
+     * @param tweakKey  The 32N-bit key encrypting sector indices (K2), must differ from dataKey.
+     */
+    public AnubisXTS(byte[/*4*N*/] dataKey, byte[/*4*N*/] tweakKey)
+    {
+        this(dataKey, tweakKey, DEFAULT_SECTOR_SIZE);
+    }
+
+    /**
+     * @param dataKey   The 32N-bit key encrypting the data (K1).
+     * @param tweakKey  The 32N-bit key encrypting sector indices (K2), must differ from dataKey.
+     * @param sectorSize sector size used by the bulk operations, at least 16 bytes.
+     */
+    public AnubisXTS(byte[/*4*N*/] dataKey, byte[/*4*N*/] tweakKey, int sectorSize)
+    {
+        this(new AnubisKey(checkKeys(dataKey, tweakKey, sectorSize)), new AnubisKey(tweakKey, true), sectorSize);
+    }
+
+    /**
+     * @param dataKey   key schedule for the data (K1), must allow decryption if this instance decrypts.
+     * @param tweakKey  key schedule for sector indices (K2), may be encrypt-only.
+     * @param sectorSize sector size used by the bulk operations, at least 16 bytes.
+     */
+    public AnubisXTS(AnubisKey dataKey, AnubisKey tweakKey, int sectorSize)
+    {
+        if (sectorSize < BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid XTS sector size: " + sectorSize + " bytes.");
+        }
+        this.dataKey = dataKey;
+        this.tweakKey = tweakKey;
+        this.sectorSize = sectorSize;
+    }
+
+    /**
+     * Validate the raw key constructor arguments before any key schedule is expanded,
+     * so a rejected call leaves no unwiped schedule behind.
+     *
+     * @return dataKey
+     */
+    private static byte[] checkKeys(byte[] dataKey, byte[] tweakKey, int sectorSize)
+    {
+        if (Arrays.equals(dataKey, tweakKey))
+        {
+            throw new RuntimeException("XTS data and tweak keys must differ.");
+        }
+        int N = tweakKey.length/4;
+        if (N < 4 || N > 10)
+        {
+            throw new RuntimeException("Invalid Anubis key size: " + (32*N) + " bits.");
+        }
+        if (sectorSize < BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid XTS sector size: " + sectorSize + " bytes.");
+        }
+        return dataKey;
+    }
+
+    /**
+     * @return sector size used by the bulk operations.
+     */
+    public int getSectorSize()
+    {
+        return sectorSize;
+    }
+
+    /**
+     * Encrypt one sector of any length from 16 bytes up. <code>in</code> and
+     * <code>out</code> may be the same array at the same offset.
+     *
+     * @param sectorIndex   index of the sector, selects the tweak.
+     */
+    public void encryptSector(long sectorIndex, byte[] in, int inOff, byte[] out, int outOff, int len)
+    {
+        crypt(true, sectorIndex, in, inOff, out, outOff, len, new byte[BLOCK_SIZE]);
+    }
+
+    /**
+     * Decrypt one sector of any length from 16 bytes up. <code>in</code> and
+     * <code>out</code> may be the same array at the same offset.
+     *
+     * @param sectorIndex   index of the sector, selects the tweak.
+     */
+    public void decryptSector(long sectorIndex, byte[] in, int inOff, byte[] out, int outOff, int len)
+    {
+        crypt(false, sectorIndex, in, inOff, out, outOff, len, new byte[BLOCK_SIZE]);
+    }
+
+    /**
+     * Encrypt consecutive sectors of {@link #getSectorSize()} bytes; the last one may
+     * be shorter, but no shorter than 16 bytes.
+     *
+     * @param firstSector   index of the first sector.
+     */
+    public void encryptSectors(long firstSector, byte[] in, int inOff, byte[] out, int outOff, int len)
+    {
+        cryptSectors(true, firstSector, in, inOff, out, outOff, len);
+    }
+
+    /**
+     * Decrypt consecutive sectors of {@link #getSectorSize()} bytes; the last one may
+     * be shorter, but no shorter than 16 bytes.
+     *
+     * @param firstSector   index of the first sector.
+     */
+    public void decryptSectors(long firstSector, byte[] in, int inOff, byte[] out, int outOff, int len)
+    {
+        cryptSectors(false, firstSector, in, inOff, out, outOff, len);
+    }
+
+    private void cryptSectors(final boolean encrypt, final long firstSector, final byte[] in, final int inOff,
+                              final byte[] out, final int outOff, final int len)
+    {
+        int nSectors = (len + sectorSize - 1)/sectorSize;
+        if (len - (nSectors - 1)*sectorSize < BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid XTS data length: " + len + " bytes.");
+        }
+        int parts = Math.min(nSectors, Parallel.parts(len, PARALLEL_BYTES));
+        Runnable[] tasks = new Runnable[parts];
+        for (int p = 0; p < parts; p++)
+        {
+            final int from = (int)((long)nSectors*p/parts);
+            final int to = (int)((long)nSectors*(p + 1)/parts);
+            tasks[p] = new Runnable()
+            {
+                public void run()
+                {
+                    byte[] t = new byte[BLOCK_SIZE]; // tweak scratch shared by the sectors of this task
+                    for (int s = from; s < to; s++)
+                    {
+                        int off = s*sectorSize;
+                        crypt(encrypt, firstSector + s, in, inOff + off, out, outOff + off, Math.min(sectorSize, len - off), t);
+                    }
+                }
+            };
+        }
+        Parallel.invokeAll(tasks);
+    }
+
+    /**
+     * @param t 16 byte scratch, all zero on entry and wiped again before returning.
+     */
+    private void crypt(boolean encrypt, long sectorIndex, byte[] in, int inOff, byte[] out, int outOff, int len, byte[] t)
+    {
+        if (len < BLOCK_SIZE)
+        {
+            throw new RuntimeException("Invalid XTS sector length: " + len + " bytes.");
+        }
+        // T_0 = E_K2(i), kept as two little-endian 64-bit halves:
+        for (int i = 0; i < 8; i++)
+        {
+            t[i] = (byte)(sectorIndex >>> (8*i));
+        }
+        tweakKey.encryptBlock(t, 0, t, 0);
+        long t0 = getLong(t, 0);
+        long t1 = getLong(t, 8);
+        Arrays.fill(t, (byte)0);
+
+        int tail = len%BLOCK_SIZE;
+        int nBlocks = len/BLOCK_SIZE - ((tail != 0) ? 1 : 0); // blocks not involved in stealing
+
+        // whiten, bulk encrypt in place, whiten again with the same tweaks:
+        long w0 = t0, w1 = t1;
+        for (int b = 0, off = 0; b < nBlocks; b++, off += BLOCK_SIZE)
+        {
+            xorTweak(in, inOff + off, out, outOff + off, w0, w1);
+            long carry = w1 >> 63;
+            w1 = (w1 << 1) | (w0 >>> 63);
+            w0 = (w0 << 1) ^ (carry & 0x87);
+        }
+        if (encrypt)
+        {
+            dataKey.encryptBlocks(out, outOff, out, outOff, nBlocks);
+        }
+        else
+        {
+            dataKey.decryptBlocks(out, outOff, out, outOff, nBlocks);
+        }
+        for (int b = 0, off = 0; b < nBlocks; b++, off += BLOCK_SIZE)
+        {
+            xorTweak(out, outOff + off, out, outOff + off, t0, t1);
+            long carry = t1 >> 63;
+            t1 = (t1 << 1) | (t0 >>> 63);
+            t0 = (t0 << 1) ^ (carry & 0x87);
+        }
+        if (tail == 0)
+        {
+            return;
+        }
+
+        // ciphertext stealing over the last full block and the partial one:
+        long carry = t1 >> 63;
+        long n1 = (t1 << 1) | (t0 >>> 63);
+        long n0 = (t0 << 1) ^ (carry & 0x87);
+        int last = nBlocks*BLOCK_SIZE;
+        byte[] cc = t; // reuse as block buffer
+        // encryption uses T_{m-1} then T_m, decryption the other way round
+        long a0 = encrypt ? t0 : n0, a1 = encrypt ? t1 : n1;
+        long b0 = encrypt ? n0 : t0, b1 = encrypt ? n1 : t1;
+        xorTweak(in, inOff + last, cc, 0, a0, a1);
+        cryptBlock(encrypt, cc);
+        xorTweak(cc, 0, cc, 0, a0, a1);
+        for (int i = 0; i < tail; i++) // swap the partial block with the head of cc
+        {
+            byte p = in[inOff + last + BLOCK_SIZE + i];
+            out[outOff + last + BLOCK_SIZE + i] = cc[i];
+            cc[i] = p;
+        }
+        xorTweak(cc, 0, out, outOff + last, b0, b1);
+        cryptBlock(encrypt, out, outOff + last);
+        xorTweak(out, outOff + last, out, outOff + last, b0, b1);
+        Arrays.fill(cc, (byte)0);
+    }
+
+    private void cryptBlock(boolean encrypt, byte[] block)
+    {
+        cryptBlock(encrypt, block, 0);
+    }
+
+    private void cryptBlock(boolean encrypt, byte[] block, int off)
+    {
+        if (encrypt)
+        {
+            dataKey.encryptBlock(block, off, block, off);
+        }
+        else
+        {
+            dataKey.decryptBlock(block, off, block, off);
+        }
+    }
+
+    private static void xorTweak(byte[] in, int inOff, byte[] out, int outOff, long t0, long t1)
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            out[outOff + i] = (byte)(in[inOff + i] ^ (t0 >>> (8*i)));
+            out[outOff + 8 + i] = (byte)(in[inOff + 8 + i] ^ (t1 >>> (8*i)));
+        }
+    }
+
+    private static long getLong(byte[] b, int off)
+    {
+        long v = 0;
+        for (int i = 7; i >= 0; i--)
+        {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Throughput benchmarks of the bulk, stream and parallel code paths, one per feature:
+ * <code>Benchmark [cbc|pmac|siv|stream|pipeline|batch|all] [megabytes]</code>.
+ * Every figure is the best of a few passes, the first pass warms up the JIT.
+ */
+final class Benchmark
+{
+    private static final int PASSES = 3;
+
+    /**
+     * Discards everything written to it
+     */
+    private static final OutputStream SINK = new OutputStream()
+    {
+        public void write(int b) {}
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    private Benchmark()
+    {}
+
+    /**
+     * One timed pass of a benchmark
+     */
+    private static abstract class Task
+    {
+        abstract void run() throws Exception;
+    }
+
+    /**
+     * @return shortest of PASSES runs of the task, in nanoseconds
+     */
+    private static long best(Task task) throws Exception
+    {
+        long best = Long.MAX_VALUE;
+        for (int pass = 0; pass < PASSES; pass++)
+        {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static String rate(int megabytes, long nanos)
+    {
+        return (megabytes*1000000000L/nanos) + " MB/s";
+    }
+
+    private static byte[] key()
+    {
+        byte[] key = new byte[40];
+        key[0] = (byte)0x80;
+        return key;
+    }
+
+    /**
+     * Serial CBC encryption against decryption split into 1, 2, 4 ... chunks,
+     * up to twice the number of available processors
+     */
+    static void cbc(int megabytes) throws Exception
+    {
+        final byte[] iv = new byte[AnubisCBC.BLOCK_SIZE];
+        final AnubisCBC cbc = new AnubisCBC(key());
+        final byte[] plain = new byte[megabytes*1024*1024];
+        final byte[] cipher = new byte[AnubisCBC.getOutputSize(plain.length)];
+        final byte[] out = new byte[cipher.length];
+        System.out.println("CBC encrypt: " + rate(megabytes, best(new Task()
+        {
+            void run()
+            {
+                cbc.encrypt(iv, plain, 0, plain.length, cipher, 0);
+            }
+        })));
+        for (int threads = 1; threads <= 2*Parallel.THREADS; threads *= 2)
+        {
+            final int chunks = threads;
+            System.out.println("CBC decrypt, " + threads + " chunk(s): " + rate(megabytes, best(new Task()
+            {
+                void run()
+                {
+                    cbc.decrypt(iv, cipher, 0, cipher.length, out, 0, chunks);
+                }
+            })));
+        }
+    }
+
+    /**
+     * Serial CMAC against PMAC fed in 64 KiB pieces, which keeps it on one thread,
+     * and PMAC over the whole message on the shared worker threads
+     */
+    static void pmac(int megabytes) throws Exception
+    {
+        AnubisKey key = new AnubisKey(key(), true);
+        final AnubisCMAC cmac = new AnubisCMAC(key);
+        final AnubisPMAC pmac = new AnubisPMAC(key);
+        final byte[] message = new byte[megabytes*1024*1024];
+        long serial = best(new Task()
+        {
+            void run()
+            {
+                cmac.mac(message, 0, message.length);
+            }
+        });
+        long pieces = best(new Task()
+        {
+            void run()
+            {
+                for (int off = 0; off < message.length; off += 64*1024)
+                {
+                    pmac.update(message, off, Math.min(64*1024, message.length - off));
+                }
+                pmac.doFinal();
+            }
+        });
+        long parallel = best(new Task()
+        {
+            void run()
+            {
+                pmac.mac(message, 0, message.length);
+            }
+        });
+        System.out.println("CMAC " + rate(megabytes, serial) + ", PMAC 1 thread " + rate(megabytes, pieces) +
+                ", PMAC " + Parallel.THREADS + " thread(s) " + rate(megabytes, parallel));
+    }
+
+    /**
+     * Two-pass SIV encryption against single-pass CTR with a key of the same size
+     */
+    static void siv(int megabytes) throws Exception
+    {
+        byte[] key = new byte[80];
+        key[0] = (byte)0x80;
+        final CipherAnubisSIV siv = new CipherAnubisSIV(key);
+        final AnubisCTR ctr = new AnubisCTR(key(), new byte[AnubisCTR.BLOCK_SIZE]);
+        final byte[] buffer = new byte[megabytes*1024*1024];
+        final byte[] out = new byte[siv.getOutputSize(buffer.length)];
+        long sivTime = best(new Task()
+        {
+            void run()
+            {
+                siv.encrypt(buffer, 0, buffer.length, out, 0);
+            }
+        });
+        long ctrTime = best(new Task()
+        {
+            void run()
+            {
+                ctr.seek(0);
+                ctr.process(buffer);
+            }
+        });
+        System.out.println("SIV " + rate(megabytes, sivTime) + ", CTR " + rate(megabytes, ctrTime));
+    }
+
+    /**
+     * Bulk Cipher.encrypt over chunks against the same work done through AnubisOutputStream
+     * and AnubisInputStream, small writes show the buffering overhead
+     */
+    static void stream(int megabytes) throws Exception
+    {
+        final CipherAnubis cipher = new CipherAnubis(key());
+        final byte[] plain = new byte[megabytes*1024*1024];
+        final byte[] out = new byte[cipher.getOutputSize(AnubisOutputStream.DEFAULT_CHUNK_SIZE)];
+        System.out.println("Bulk encrypt: " + rate(megabytes, best(new Task()
+        {
+            void run() throws Exception
+            {
+                for (int off = 0; off < plain.length; off += AnubisOutputStream.DEFAULT_CHUNK_SIZE)
+                {
+                    int n = cipher.encrypt(plain, off, Math.min(AnubisOutputStream.DEFAULT_CHUNK_SIZE, plain.length - off), out, 0);
+                    SINK.write(out, 0, n);
+                }
+            }
+        })));
+        int[] writeSizes = {plain.length, 8192, 100};
+        for (int w = 0; w < writeSizes.length; w++)
+        {
+            final int writeSize = writeSizes[w];
+            System.out.println("Stream encrypt, " + writeSize + " byte writes: " + rate(megabytes, best(new Task()
+            {
+                void run() throws Exception
+                {
+                    AnubisOutputStream os = new AnubisOutputStream(SINK, cipher);
+                    for (int off = 0; off < plain.length; off += writeSize)
+                    {
+                        os.write(plain, off, Math.min(writeSize, plain.length - off));
+                    }
+                    os.close();
+                }
+            })));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(plain.length + plain.length/64);
+        AnubisOutputStream os = new AnubisOutputStream(bos, cipher);
+        os.write(plain);
+        os.close();
+        final byte[] frames = bos.toByteArray();
+        System.out.println("Stream decrypt: " + rate(megabytes, best(new Task()
+        {
+            void run() throws Exception
+            {
+                AnubisInputStream is = new AnubisInputStream(new ByteArrayInputStream(frames), cipher);
+                while (is.read(plain) > 0) {}
+                is.close();
+            }
+        })));
+    }
+
+    /**
+     * The pipeline over an in-memory stream with a slowed down input, so the overlap of
+     * reading and encryption shows, for different depths and worker counts
+     */
+    static void pipeline(int megabytes) throws Exception
+    {
+        final CipherAnubis cipher = new CipherAnubis(key());
+        final byte[] plain = new byte[megabytes*1024*1024];
+        System.out.println("Single thread stream: " + rate(megabytes, best(new Task()
+        {
+            void run() throws Exception
+            {
+                cipher.encrypt(new SlowInputStream(plain), SINK, plain.length);
+            }
+        })));
+        int[][] configs = {{1, 1}, {2, 1}, {4, 1}, {4, 2}, {8, Parallel.THREADS}};
+        for (int i = 0; i < configs.length; i++)
+        {
+            AnubisPipeline pipeline = new AnubisPipeline(cipher, AnubisPipeline.DEFAULT_CHUNK_SIZE, configs[i][0], configs[i][1]);
+            AnubisPipeline.Stats stats = null;
+            for (int pass = 0; pass < 2; pass++) // the first pass warms up the JIT
+            {
+                stats = pipeline.encrypt(new SlowInputStream(plain), SINK, plain.length);
+            }
+            System.out.println("Pipeline depth " + configs[i][0] + ": " + stats);
+        }
+    }
+
+    /**
+     * Simulates a device delivering 64 KiB per millisecond, about 64 MB/s
+     */
+    private static final class SlowInputStream extends ByteArrayInputStream
+    {
+        SlowInputStream(byte[] buffer)
+        {
+            super(buffer);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+        {
+            len = Math.min(len, 64*1024);
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.read(b, off, len);
+        }
+    }
+
+    /**
+     * Encrypts a tree of small files with one, eight and the default number of I/O threads
+     */
+    static void batch(int files, int fileSize) throws Exception
+    {
+        CipherAnubis cipher = new CipherAnubis(key());
+        File root = new File(System.getProperty("java.io.tmpdir"), "anubis-batch-" + System.nanoTime());
+        File source = new File(root, "plain");
+        try
+        {
+            byte[] data = new byte[fileSize];
+            for (int i = 0; i < files; i++)
+            {
+                File dir = new File(source, Integer.toString(i%32));
+                dir.mkdirs();
+                OutputStream os = new FileOutputStream(new File(dir, i + ".dat"));
+                os.write(data);
+                os.close();
+            }
+            int[] threads = {1, 8, AnubisBatch.DEFAULT_IO_THREADS};
+            for (int pass = 0; pass < 2; pass++) // the first pass warms up the JIT and file cache
+            {
+                for (int i = 0; i < threads.length; i++)
+                {
+                    AnubisBatch batch = new AnubisBatch(cipher, threads[i], AnubisBatch.DEFAULT_OPEN_FILES);
+                    AnubisBatch.Summary summary = batch.encryptTree(source, new File(root, "encrypted" + threads[i]));
+                    if (pass == 1)
+                    {
+                        System.out.println(threads[i] + " I/O thread(s): " + summary);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            delete(root);
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+        {
+            for (int i = 0; i < files.length; i++)
+            {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String which = (args.length > 0) ? args[0] : "all";
+        int megabytes = (args.length > 1) ? Integer.parseInt(args[1]) : 32;
+        boolean all = which.equals("all");
+        boolean known = all;
+        if (all || which.equals("cbc"))
+        {
+            cbc(megabytes);
+            known = true;
+        }
+        if (all || which.equals("pmac"))
+        {
+            pmac(megabytes);
+            known = true;
+        }
+        if (all || which.equals("siv"))
+        {
+            siv(megabytes);
+            known = true;
+        }
+        if (all || which.equals("stream"))
+        {
+            stream(megabytes);
+            known = true;
+        }
+        if (all || which.equals("pipeline"))
+        {
+            pipeline(megabytes);
+            known = true;
+        }
+        if (all || which.equals("batch"))
+        {
+            batch(5000, 4096);
+            known = true;
+        }
+        if (!known)
+        {
+            System.err.println("Usage: Benchmark [cbc|pmac|siv|stream|pipeline|batch|all] [megabytes]");
+        }
+    }
+}
@@ -40,11 +40,11 @@ public class ByteUtils
 
     public static long byteArrayToLong(byte[] buffer, int offset)
     {
-        return (buffer[offset] << 56)
-                + ((buffer[offset+1] & 0xFF) << 48)
-                + ((buffer[offset+2] & 0xFF) << 40)
-                + ((buffer[offset+3] & 0xFF) << 32)
-                + ((buffer[offset+4] & 0xFF) << 24)
+        return ((long )buffer[offset] << 56)
+                + ((long )(buffer[offset+1] & 0xFF) << 48)
+                + ((long )(buffer[offset+2] & 0xFF) << 40)
+                + ((long )(buffer[offset+3] & 0xFF) << 32)
+                + ((long )(buffer[offset+4] & 0xFF) << 24)
                 + ((buffer[offset+5] & 0xFF) << 16)
                 + ((buffer[offset+6] & 0xFF) << 8)
                 + (buffer[offset+7] & 0xFF);
@@ -69,6 +69,30 @@ public class ByteUtils
                 };    
     }
 
+    public static void intToByteArray(int value, byte[] buffer, int offset)
+    {
+        buffer[offset]=(byte)(value >>> 24);
+        buffer[offset+1]=(byte)(value >>> 16);
+        buffer[offset+2]=(byte)(value >>> 8);
+        buffer[offset+3]=(byte)value;
+    }
+
+    /**
+     * Reads exactly <code>length</code> bytes unless stream ends
+     * @throws EOFException when stream ends before <code>length</code> bytes were read
+     */
+    public static void readFully(InputStream is, byte[] buffer, int offset, int length) throws IOException
+    {
+        while(length > 0)
+        {
+            int n=is.read(buffer, offset, length);
+            if(n < 0)
+                throw new EOFException("Unexpected end of stream, "+length+" bytes missing");
+            offset+=n;
+            length-=n;
+        }
+    }
+
     public static byte[] stringToByteArray(String s)
     {
         try
@@ -15,6 +15,9 @@
 
 package ru.ivanovpv.anubis4cellbox;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * Abstract wrapper over Anubis cipher
  */
@@ -23,6 +26,12 @@ public abstract class Cipher
     private int digestType;
     public final static int DIGEST_SHA1=0;
     public final static int DIGEST_WHIRLPOOL=1;
+    public final static int ENCRYPT_MODE=1;
+    public final static int DECRYPT_MODE=2;
+
+    private int mode=0; //incremental mode, 0 until init
+    private byte[] pending=null; //message buffered by default incremental implementation
+    private int pendingLength=0;
 
     public abstract byte[] encrypt(byte[] buffer);
     public abstract byte[] decrypt(byte[] buffer);
@@ -64,6 +73,215 @@ public abstract class Cipher
         }
     }
 
+    /**
+     * Size of encrypted data, lets callers presize reused output buffers.
+     * Computed from the length alone: no allocation, no encryption, no random numbers consumed
+     * @param length plaintext length
+     * @return number of bytes encrypt will produce for given plaintext length
+     */
+    public abstract int getOutputSize(int length);
+
+    /**
+     * Encrypts len bytes of in into out, which has to have room for getOutputSize(len) bytes.
+     * in and out may be the same array at the same offset.
+     * Default implementation copies through byte arrays, subclasses may work without allocations
+     * @param in buffer holding data to be encrypted, not modified unless it is out
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving encrypted data
+     * @param outOff offset of encrypted data in out
+     * @return number of bytes written into out
+     */
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        byte[] buffer=new byte[len];
+        System.arraycopy(in, inOff, buffer, 0, len);
+        buffer=encrypt(buffer);
+        System.arraycopy(buffer, 0, out, outOff, buffer.length);
+        return buffer.length;
+    }
+
+    /**
+     * Decrypts len bytes of in into out, which has to have room for len bytes (decrypted data is never longer,
+     * but room may be used as scratch). in and out may be the same array at the same offset.
+     * Default implementation copies through byte arrays, subclasses may work without allocations
+     * @param in buffer holding data to be decrypted, not modified unless it is out
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving decrypted data
+     * @param outOff offset of decrypted data in out
+     * @return number of bytes written into out
+     */
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        byte[] buffer=new byte[len];
+        System.arraycopy(in, inOff, buffer, 0, len);
+        buffer=decrypt(buffer);
+        System.arraycopy(buffer, 0, out, outOff, buffer.length);
+        return buffer.length;
+    }
+
+    /**
+     * In-place encryption, buffer has to have room for getOutputSize(len) bytes from off
+     * @param buffer buffer holding data to be encrypted
+     * @param off offset of data
+     * @param len length of data
+     * @return number of encrypted bytes in buffer from off
+     */
+    public final int encrypt(byte[] buffer, int off, int len)
+    {
+        return encrypt(buffer, off, len, buffer, off);
+    }
+
+    /**
+     * In-place decryption
+     * @param buffer buffer holding data to be decrypted
+     * @param off offset of data
+     * @param len length of data
+     * @return number of decrypted bytes in buffer from off
+     */
+    public final int decrypt(byte[] buffer, int off, int len)
+    {
+        return decrypt(buffer, off, len, buffer, off);
+    }
+
+    /**
+     * Starts incremental encryption or decryption of new message, discarding unfinished one
+     * @param mode ENCRYPT_MODE or DECRYPT_MODE
+     */
+    public void init(int mode)
+    {
+        if(mode!=ENCRYPT_MODE && mode!=DECRYPT_MODE)
+            throw new RuntimeException("Invalid cipher mode: "+mode);
+        this.mode=mode;
+        reset();
+    }
+
+    /**
+     * @return ENCRYPT_MODE or DECRYPT_MODE as set by init, 0 before init
+     */
+    public final int getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Processes next part of message. Output may lag behind input, rest of it comes from doFinal
+     * Default implementation buffers whole message and processes it in doFinal,
+     * subclasses may stream it in constant memory
+     * @param in buffer holding next part of message
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving output, has to have room for getUpdateOutputSize(len) bytes
+     * @param outOff offset of output in out
+     * @return number of bytes written into out
+     */
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        checkMode();
+        if(pending==null || pending.length-pendingLength < len)
+        {
+            byte[] buf=new byte[Math.max(pendingLength+len, 2*pendingLength)];
+            if(pending!=null)
+            {
+                System.arraycopy(pending, 0, buf, 0, pendingLength);
+                Arrays.fill(pending, (byte)0);
+            }
+            pending=buf;
+        }
+        System.arraycopy(in, inOff, pending, pendingLength, len);
+        pendingLength+=len;
+        return 0;
+    }
+
+    /**
+     * Finishes message, writing rest of output, and gets ready for next message in same mode
+     * @param out buffer receiving output, has to have room for getFinalOutputSize() bytes
+     * @param outOff offset of output in out
+     * @return number of bytes written into out
+     */
+    public int doFinal(byte[] out, int outOff)
+    {
+        checkMode();
+        try
+        {
+            if(pending==null)
+                pending=new byte[0];
+            if(mode==ENCRYPT_MODE)
+                return encrypt(pending, 0, pendingLength, out, outOff);
+            return decrypt(pending, 0, pendingLength, out, outOff);
+        }
+        finally
+        {
+            reset();
+        }
+    }
+
+    /**
+     * @param len length of input to update
+     * @return maximal number of bytes update may write for it
+     */
+    public int getUpdateOutputSize(int len)
+    {
+        return 0;
+    }
+
+    /**
+     * @return maximal number of bytes doFinal may write for message processed so far
+     */
+    public int getFinalOutputSize()
+    {
+        return (mode==ENCRYPT_MODE) ? getOutputSize(pendingLength) : pendingLength;
+    }
+
+    /**
+     * Discards state of unfinished incremental message
+     */
+    protected void reset()
+    {
+        if(pending!=null)
+            Arrays.fill(pending, 0, pendingLength, (byte)0);
+        pendingLength=0;
+    }
+
+    protected final void checkMode()
+    {
+        if(mode==0)
+            throw new RuntimeException("Cipher not initialized, call init first");
+    }
+
+    /**
+     * Encrypts remaining bytes of src into dst. Positions of both buffers are advanced.
+     * Default implementation copies through byte arrays, subclasses may work on buffers directly
+     * @param src buffer holding data to be encrypted
+     * @param dst buffer receiving encrypted data
+     * @return number of bytes written into dst
+     */
+    public int encrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        byte[] buffer=new byte[src.remaining()];
+        src.get(buffer);
+        buffer=encrypt(buffer);
+        dst.put(buffer);
+        return buffer.length;
+    }
+
+    /**
+     * Decrypts remaining bytes of src into dst. Positions of both buffers are advanced.
+     * Default implementation copies through byte arrays, subclasses may work on buffers directly
+     * @param src buffer holding data to be decrypted
+     * @param dst buffer receiving decrypted data
+     * @return number of bytes written into dst
+     */
+    public int decrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        byte[] buffer=new byte[src.remaining()];
+        src.get(buffer);
+        buffer=decrypt(buffer);
+        dst.put(buffer);
+        return buffer.length;
+    }
+
     public int getDigestType()
     {
         return this.digestType;
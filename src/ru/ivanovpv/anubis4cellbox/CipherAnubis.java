@@ -16,7 +16,12 @@
 package ru.ivanovpv.anubis4cellbox;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Semaphore;
 
 /**
  * Standard wrapper around Anubis. As-is, just rounds buffer to blocks limits,
@@ -29,6 +34,11 @@ public class CipherAnubis extends Cipher
     private static final byte PADDING_BYTE=0; //doesn't really matter
     private static final int BLOCK_SIZE=16; //no more than 16 bytes!
     private static final int KEY_SIZE=40; //320 bits
+    private static final int CHUNK_SIZE=64*1024; //stream chunk, multiple of BLOCK_SIZE
+    private static final int MAP_WINDOW=64*1024*1024; //file region mapped at once, multiple of BLOCK_SIZE
+    private static final int PARALLEL_BYTES=256*1024; //smallest mapped region worth a worker thread
+    private final byte[] partial=new byte[BLOCK_SIZE]; //incomplete block carried between updates
+    private int partialLength=0;
 
     /**
      * Test only constructor
@@ -36,10 +46,18 @@ public class CipherAnubis extends Cipher
      */
     public CipherAnubis(byte[] key)
     {
-        anubis = new Anubis();
-        anubis.keySetup(key);
+        this(key, null);
     }
 
+    /**
+     * Constructor with raw key and optional key schedule cache
+     * @param key 320-bit key
+     * @param cache cache of expanded key schedules, null expands key here
+     */
+    public CipherAnubis(byte[] key, AnubisKeyCache cache)
+    {
+        anubis = AnubisKeyCache.getAnubis(cache, key);
+    }
 
     /**
      * Default constructor uses SHA1 keygen procedure for backward compatibility
@@ -47,9 +65,7 @@ public class CipherAnubis extends Cipher
      */
     public CipherAnubis(String password)
     {
-        byte[] digest=generateDigest(password, DIGEST_WHIRLPOOL, KEY_SIZE);
-        anubis = new Anubis();
-        anubis.keySetup(digest);
+        this(password, DIGEST_WHIRLPOOL, null);
     }
 
     /**
@@ -59,11 +75,20 @@ public class CipherAnubis extends Cipher
      */
     public CipherAnubis(String password, int type)
     {
-        byte[] digest=generateDigest(password, type, KEY_SIZE);
-        anubis = new Anubis();
-        anubis.keySetup(digest);
+        this(password, type, null);
     }
 
+    /**
+     * Constructor with selectable keygen procedure and optional key schedule cache
+     * @param password password used to generate key
+     * @param type - selected keygen algorythm either SHA1 or WHIRLPOOL
+     * @param cache cache of expanded key schedules, null expands key here
+     */
+    public CipherAnubis(String password, int type, AnubisKeyCache cache)
+    {
+        byte[] digest=generateDigest(password, type, KEY_SIZE);
+        anubis = AnubisKeyCache.getAnubis(cache, digest);
+    }
 
     /**
      * Anubis encryption method. buffer will be rounded/padded in accordance with Anubis block size (16 bytes)
@@ -73,15 +98,9 @@ public class CipherAnubis extends Cipher
     @Override
     public final byte[] encrypt(byte[] buffer)
     {
-        byte[] buf=new byte[BLOCK_SIZE];
-        buffer=roundBuffer(buffer);
-        for(int i=0; i < buffer.length; i+=BLOCK_SIZE)
-        {
-            System.arraycopy(buffer, i, buf, 0, BLOCK_SIZE);
-            anubis.encrypt(buf);
-            System.arraycopy(buf, 0, buffer, i, BLOCK_SIZE);
-        }
-        return buffer;
+        byte[] out=new byte[roundSize(buffer.length)];
+        encrypt(buffer, 0, buffer.length, out, 0);
+        return out;
     }
 
     /**
@@ -94,17 +113,281 @@ public class CipherAnubis extends Cipher
     @Override
     public final byte[] decrypt(byte[] buffer)
     {
-        //int len=buffer.length-BLOCK_SIZE;
-        byte[] buf=new byte[BLOCK_SIZE];
-        for(int i=0; i < buffer.length; i+=BLOCK_SIZE)
+        decryptBlocks(buffer, 0, buffer, 0, buffer.length/BLOCK_SIZE);
+        return buffer;
+    }
+
+    /**
+     * @param length data length
+     * @return length rounded up to Anubis block size (16 bytes)
+     */
+    @Override
+    public final int getOutputSize(int length)
+    {
+        return roundSize(length);
+    }
+
+    /**
+     * Anubis encryption without allocations. Data is rounded/padded in accordance with Anubis block size (16 bytes).
+     * in and out may be the same array at the same offset, other overlapping regions get corrupted
+     * @param in buffer holding data to be encrypted
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving encrypted data, has to have room for getOutputSize(len) bytes
+     * @param outOff offset of encrypted data in out
+     * @return number of bytes written into out (always multiple of 16 bytes)
+     */
+    @Override
+    public final int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        int size=roundSize(len);
+        if(out.length-outOff < size)
+            throw new ArrayIndexOutOfBoundsException(outOff+size);
+        int blocks=len/BLOCK_SIZE;
+        encryptBlocks(in, inOff, out, outOff, blocks);
+        if(size > len) //last partial block
         {
-            System.arraycopy(buffer, i, buf, 0, BLOCK_SIZE);
-            anubis.decrypt(buf);
-            System.arraycopy(buf, 0, buffer, i, BLOCK_SIZE);
+            int done=blocks*BLOCK_SIZE;
+            System.arraycopy(in, inOff+done, out, outOff+done, len-done);
+            for(int i=outOff+len; i < outOff+size; i++)
+                out[i]=PADDING_BYTE;
+            encryptBlocks(out, outOff+done, out, outOff+done, 1);
         }
-        return buffer;
+        return size;
+    }
+
+    /**
+     * Anubis decryption without allocations.
+     * Method doesn't check non-zero renundancy for Anubis block size (16 bytes), trailing bytes
+     * of incomplete block are copied into out as-is.
+     * in and out may be the same array at the same offset, other overlapping regions get corrupted
+     * @param in buffer holding data to be decrypted
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving decrypted data
+     * @param outOff offset of decrypted data in out
+     * @return number of bytes written into out
+     */
+    @Override
+    public final int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        int blocks=len/BLOCK_SIZE;
+        decryptBlocks(in, inOff, out, outOff, blocks);
+        int done=blocks*BLOCK_SIZE;
+        System.arraycopy(in, inOff+done, out, outOff+done, len-done);
+        return len;
+    }
+
+    /**
+     * Incremental Anubis encryption/decryption in constant memory: complete blocks are processed at once,
+     * incomplete block is carried over to next update or doFinal
+     * @param in buffer holding next part of message
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving output, has to have room for getUpdateOutputSize(len) bytes, must not overlap in
+     * @param outOff offset of output in out
+     * @return number of bytes written into out (always multiple of 16 bytes)
+     */
+    @Override
+    public final int update(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        checkMode();
+        int written=0;
+        if(partialLength > 0)
+        {
+            int n=Math.min(len, BLOCK_SIZE-partialLength);
+            System.arraycopy(in, inOff, partial, partialLength, n);
+            partialLength+=n;
+            inOff+=n;
+            len-=n;
+            if(partialLength < BLOCK_SIZE)
+                return 0;
+            cryptBlocks(partial, 0, out, outOff, 1);
+            partialLength=0;
+            written=BLOCK_SIZE;
+        }
+        int blocks=len/BLOCK_SIZE;
+        cryptBlocks(in, inOff, out, outOff+written, blocks);
+        written+=blocks*BLOCK_SIZE;
+        partialLength=len-blocks*BLOCK_SIZE;
+        System.arraycopy(in, inOff+blocks*BLOCK_SIZE, partial, 0, partialLength);
+        return written;
+    }
+
+    /**
+     * Finishes incremental message: when encrypting incomplete block is padded and encrypted,
+     * when decrypting trailing bytes of incomplete block are copied as-is (same as one-shot methods)
+     * @param out buffer receiving output, has to have room for getFinalOutputSize() bytes
+     * @param outOff offset of output in out
+     * @return number of bytes written into out
+     */
+    @Override
+    public final int doFinal(byte[] out, int outOff)
+    {
+        checkMode();
+        int written=partialLength;
+        if(getMode()==ENCRYPT_MODE && partialLength > 0)
+        {
+            for(int i=partialLength; i < BLOCK_SIZE; i++)
+                partial[i]=PADDING_BYTE;
+            encryptBlocks(partial, 0, out, outOff, 1);
+            written=BLOCK_SIZE;
+        }
+        else
+            System.arraycopy(partial, 0, out, outOff, partialLength);
+        reset();
+        return written;
+    }
+
+    @Override
+    public final int getUpdateOutputSize(int len)
+    {
+        return BLOCK_SIZE*((partialLength+len)/BLOCK_SIZE);
+    }
+
+    @Override
+    public final int getFinalOutputSize()
+    {
+        if(getMode()==ENCRYPT_MODE)
+            return (partialLength > 0) ? BLOCK_SIZE : 0;
+        return partialLength;
+    }
+
+    @Override
+    protected void reset()
+    {
+        super.reset();
+        for(int i=0; i < BLOCK_SIZE; i++)
+            partial[i]=0;
+        partialLength=0;
+    }
+
+    private void cryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        if(getMode()==ENCRYPT_MODE)
+            encryptBlocks(src, srcOff, dst, dstOff, nBlocks);
+        else
+            decryptBlocks(src, srcOff, dst, dstOff, nBlocks);
+    }
+
+    /**
+     * Anubis encryption of byte buffers (heap or direct) without intermediate copies.
+     * Remaining bytes of src are rounded/padded in accordance with Anubis block size (16 bytes)
+     * @param src buffer holding data to be encrypted, position is advanced to its limit
+     * @param dst buffer receiving encrypted data, position is advanced by returned value
+     * @return number of bytes written into dst (always multiple of 16 bytes)
+     */
+    @Override
+    public final int encrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        int length=src.remaining();
+        int size=roundSize(length);
+        if(dst.remaining() < size)
+            throw new BufferOverflowException();
+        int srcPos=src.position();
+        int dstPos=dst.position();
+        int blocks=length/BLOCK_SIZE;
+        encryptBlocks(src, srcPos, dst, dstPos, blocks);
+        if(size > length) //last partial block
+        {
+            int done=blocks*BLOCK_SIZE;
+            for(int i=done; i < length; i++)
+                dst.put(dstPos+i, src.get(srcPos+i));
+            for(int i=length; i < size; i++)
+                dst.put(dstPos+i, PADDING_BYTE);
+            encryptBlocks(dst, dstPos+done, dst, dstPos+done, 1);
+        }
+        src.position(srcPos+length);
+        dst.position(dstPos+size);
+        return size;
+    }
+
+    /**
+     * Anubis decryption of byte buffers (heap or direct) without intermediate copies.
+     * Method doesn't check non-zero renundancy for Anubis block size (16 bytes), trailing bytes
+     * of incomplete block are copied into dst as-is
+     * @param src buffer holding data to be decrypted, position is advanced to its limit
+     * @param dst buffer receiving decrypted data, position is advanced by returned value
+     * @return number of bytes written into dst
+     */
+    @Override
+    public final int decrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        int length=src.remaining();
+        if(dst.remaining() < length)
+            throw new BufferOverflowException();
+        int srcPos=src.position();
+        int dstPos=dst.position();
+        int blocks=length/BLOCK_SIZE;
+        decryptBlocks(src, srcPos, dst, dstPos, blocks);
+        src.position(srcPos+blocks*BLOCK_SIZE);
+        dst.position(dstPos+blocks*BLOCK_SIZE);
+        dst.put(src); //trailing bytes of incomplete block, if any
+        return length;
+    }
+
+    /**
+     * In-place Anubis encryption of byte buffer (heap, direct or memory-mapped), nothing is copied on heap.
+     * Remaining bytes are rounded/padded in accordance with Anubis block size (16 bytes): if needed limit is moved
+     * forward, so buffer capacity has to fit padding bytes
+     * @param buffer buffer holding data to be encrypted, position is advanced to its (new) limit
+     * @return number of encrypted bytes (always multiple of 16 bytes)
+     */
+    public final int encrypt(ByteBuffer buffer)
+    {
+        int pos=buffer.position();
+        int length=buffer.remaining();
+        int size=roundSize(length);
+        if(size > buffer.capacity()-pos)
+            throw new BufferOverflowException();
+        buffer.limit(pos+size);
+        for(int i=pos+length; i < pos+size; i++)
+            buffer.put(i, PADDING_BYTE);
+        encryptBlocks(buffer, pos, buffer, pos, size/BLOCK_SIZE);
+        buffer.position(pos+size);
+        return size;
+    }
+
+    /**
+     * In-place Anubis decryption of byte buffer (heap, direct or memory-mapped), nothing is copied on heap.
+     * Method doesn't check non-zero renundancy for Anubis block size (16 bytes), trailing bytes of
+     * incomplete block remain untouched
+     * @param buffer buffer holding data to be decrypted, position is advanced to its limit
+     * @return number of decrypted bytes
+     */
+    public final int decrypt(ByteBuffer buffer)
+    {
+        int pos=buffer.position();
+        int blocks=buffer.remaining()/BLOCK_SIZE;
+        decryptBlocks(buffer, pos, buffer, pos, blocks);
+        buffer.position(buffer.limit());
+        return blocks*BLOCK_SIZE;
+    }
+
+    private void encryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        anubis.encryptBlocks(src, srcPos, dst, dstPos, nBlocks);
+    }
+
+    private void decryptBlocks(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int nBlocks)
+    {
+        anubis.decryptBlocks(src, srcPos, dst, dstPos, nBlocks);
+    }
+
+    private void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        anubis.encryptBlocks(src, srcOff, dst, dstOff, nBlocks);
     }
 
+    private void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int nBlocks)
+    {
+        anubis.decryptBlocks(src, srcOff, dst, dstOff, nBlocks);
+    }
+
+    /**
+     * Wipes key schedule of this cipher. A schedule cached in AnubisKeyCache outlives it,
+     * remove the key from the cache too
+     */
     @Override
     public void clean()
     {
@@ -148,61 +431,300 @@ public class CipherAnubis extends Cipher
     protected final byte[] roundBuffer(byte[] buffer)
     {
         int length=buffer.length;
-        int size=BLOCK_SIZE*(length/BLOCK_SIZE) + BLOCK_SIZE*((length%BLOCK_SIZE==0)?0:1); //rounded buffer size including padding bytes
-        byte[] newbuf=new byte[size];
+        byte[] newbuf=new byte[roundSize(length)];
         System.arraycopy(buffer, 0, newbuf, 0, length);
         for(int i=length; i < newbuf.length; i++)
            newbuf[i]=PADDING_BYTE;
         return newbuf;
     }
 
+    /**
+     * @param length data length
+     * @return rounded buffer size including padding bytes
+     */
+    protected static int roundSize(int length)
+    {
+        return BLOCK_SIZE*(length/BLOCK_SIZE) + BLOCK_SIZE*((length%BLOCK_SIZE==0)?0:1);
+    }
 
+    /**
+     * Encrypts <code>size</code> bytes of stream into legacy Anubis format: header followed by
+     * ceil(size/16) blocks (at least one), tail block padded with PADDING_BYTE.
+     * Works in CHUNK_SIZE chunks through the bulk block path
+     * @throws EOFException when stream ends before <code>size</code> bytes were read
+     */
     public final void encrypt(InputStream is, OutputStream os, long size) throws IOException
     {
-        long pos=0;
-        long bsize;
-        byte[] buf, buffer=new byte[BLOCK_SIZE];
-        AnubisHeader ah;
+        encrypt(is, os, size, new byte[CHUNK_SIZE], null);
+    }
 
-        ah=new AnubisHeader(size);
-        buf=ah.getHeader();
-        os.write(buf);
-        do
+    /**
+     * The legacy format encryption loop, shared with AnubisBatch
+     * @param chunk buffer of a positive multiple of 16 bytes, wiped before returning
+     * @param gate if not null, a permit is held around the encryption of every chunk
+     */
+    final void encrypt(InputStream is, OutputStream os, long size, byte[] chunk, Semaphore gate) throws IOException
+    {
+        if(size < 0)
+            throw new IllegalArgumentException("Negative size");
+        try
+        {
+            os.write(new AnubisHeader(size).getHeader());
+            long pos=0;
+            do
+            {
+                int length=(int )Math.min(chunk.length, size-pos);
+                ByteUtils.readFully(is, chunk, 0, length);
+                int n;
+                acquire(gate);
+                try
+                {
+                    n=encryptChunk(chunk, length);
+                }
+                finally
+                {
+                    if(gate!=null)
+                        gate.release();
+                }
+                os.write(chunk, 0, n);
+                pos+=length;
+            }
+            while(pos < size);
+        }
+        finally
         {
-            bsize=size-pos;
-            if(bsize > BLOCK_SIZE)
-                bsize=is.read(buffer);
-            else
-                bsize=is.read(buffer, 0, (int )(size-pos));
-            buf=roundBuffer(buffer);
-            anubis.encrypt(buf);
-            os.write(buf);
-            pos+=bsize;
+            Arrays.fill(chunk, (byte )0);
         }
-        while(bsize==BLOCK_SIZE && pos < size);
     }
 
+    /**
+     * Encrypts length bytes from the start of chunk in place as part of legacy format stream,
+     * empty data still takes one padding block. Safe to call from several threads
+     * @return number of encrypted bytes at the start of chunk
+     */
+    final int encryptChunk(byte[] chunk, int length)
+    {
+        if(length > 0)
+            return encrypt(chunk, 0, length, chunk, 0);
+        for(int i=0; i < BLOCK_SIZE; i++)
+            chunk[i]=PADDING_BYTE;
+        encryptBlocks(chunk, 0, chunk, 0, 1);
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Decrypts legacy format data in place, length is multiple of 16. Safe to call from several threads
+     */
+    final void decryptChunk(byte[] chunk, int length)
+    {
+        decryptBlocks(chunk, 0, chunk, 0, length/BLOCK_SIZE);
+    }
+
+    /**
+     * Decrypts stream written by {@link #encrypt(InputStream, OutputStream, long)}, padding is stripped
+     * using size stored in header
+     * @throws EOFException when stream is shorter than header says
+     */
     public final void decrypt(InputStream is, OutputStream os) throws IOException
     {
-        long pos=0;
-        long rsize, bsize;
-        byte[] buffer=new byte[BLOCK_SIZE];
-        AnubisHeader ah;
-        is.read(buffer, 0, AnubisHeader.HEADER_SIZE);
-        ah=new AnubisHeader(buffer);
+        decrypt(is, os, new byte[CHUNK_SIZE], null);
+    }
+
+    /**
+     * The legacy format decryption loop, shared with AnubisBatch
+     * @param chunk buffer of at least one header and a multiple of 16 bytes, wiped before returning
+     * @param gate if not null, a permit is held around the decryption of every chunk
+     * @return plain text size stored in header
+     */
+    final long decrypt(InputStream is, OutputStream os, byte[] chunk, Semaphore gate) throws IOException
+    {
+        try
+        {
+            ByteUtils.readFully(is, chunk, 0, AnubisHeader.HEADER_SIZE);
+            long size=legacySize(new AnubisHeader(chunk));
+            long remaining=legacyLength(size);
+            long pos=0;
+            while(remaining > 0)
+            {
+                int length=(int )Math.min(chunk.length, remaining);
+                ByteUtils.readFully(is, chunk, 0, length);
+                acquire(gate);
+                try
+                {
+                    decryptChunk(chunk, length);
+                }
+                finally
+                {
+                    if(gate!=null)
+                        gate.release();
+                }
+                int plain=(int )Math.min(length, size-pos);
+                os.write(chunk, 0, plain);
+                pos+=plain;
+                remaining-=length;
+            }
+            return size;
+        }
+        finally
+        {
+            Arrays.fill(chunk, (byte )0);
+        }
+    }
+
+    private static void acquire(Semaphore gate) throws InterruptedIOException
+    {
+        if(gate==null)
+            return;
+        try
+        {
+            gate.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a cipher permit");
+        }
+    }
+
+    /**
+     * @param ah header read from a stream or file
+     * @return plain text size of a legacy format (version 1.2) stream
+     * @throws IOException if header isn't a legacy format one
+     */
+    static long legacySize(AnubisHeader ah) throws IOException
+    {
         long size=ah.getSize();
+        if(!ah.isValid() || ah.isFramed() || size < 0)
+            throw new IOException("Not a legacy Anubis stream, version "+ah.getVersionInfo()+", size "+size);
+        return size;
+    }
+
+    /**
+     * @param size plain text size
+     * @return number of cipher bytes following the header of a legacy format stream, at least one block
+     */
+    static long legacyLength(long size)
+    {
+        return BLOCK_SIZE*Math.max(1, (size+BLOCK_SIZE-1)/BLOCK_SIZE);
+    }
+
+    /**
+     * Encrypts whole <code>in</code> into <code>out</code> in legacy Anubis format, byte-identical to
+     * {@link #encrypt(InputStream, OutputStream, long)}. Both files are memory-mapped in MAP_WINDOW pieces
+     * and blocks of each piece are split across worker threads. Output is truncated to its exact size,
+     * call out.force(true) if it has to reach the disk
+     * @param in file to encrypt, readable
+     * @param out destination file, opened for reading and writing (RandomAccessFile "rw")
+     */
+    public final void encrypt(FileChannel in, FileChannel out) throws IOException
+    {
+        long size=in.size();
+        long outSize=legacyLength(size);
+        writeFully(out, ByteBuffer.wrap(new AnubisHeader(size).getHeader()), 0);
+        long pos=0;
         do
         {
-            rsize=is.read(buffer);
-            bsize=size-pos;
-            anubis.decrypt(buffer);
-            if(bsize <= BLOCK_SIZE)
-                os.write(buffer, 0, (int )bsize);
-            else
-                os.write(buffer);
-            pos+=rsize;
+            int length=(int )Math.min(MAP_WINDOW, size-pos);
+            int rounded=(int )Math.min(MAP_WINDOW, outSize-pos);
+            ByteBuffer src=in.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            ByteBuffer dst=out.map(FileChannel.MapMode.READ_WRITE, AnubisHeader.HEADER_SIZE+pos, rounded);
+            int blocks=length/BLOCK_SIZE;
+            cryptBlocks(src, dst, blocks, true);
+            if(rounded > blocks*BLOCK_SIZE) //tail block, or the only block of empty file
+            {
+                int done=blocks*BLOCK_SIZE;
+                for(int i=done; i < rounded; i++)
+                    dst.put(i, (i < length) ? src.get(i) : PADDING_BYTE);
+                encryptBlocks(dst, done, dst, done, 1);
+            }
+            pos+=rounded;
+        }
+        while(pos < outSize);
+        if(out.size() > AnubisHeader.HEADER_SIZE+outSize)
+            out.truncate(AnubisHeader.HEADER_SIZE+outSize);
+    }
+
+    /**
+     * Decrypts file written by {@link #encrypt(FileChannel, FileChannel)} or
+     * {@link #encrypt(InputStream, OutputStream, long)}, memory-mapped and in parallel like encryption
+     * @param in encrypted file
+     * @param out destination file, opened for reading and writing (RandomAccessFile "rw")
+     * @throws EOFException when file is shorter than its header says
+     */
+    public final void decrypt(FileChannel in, FileChannel out) throws IOException
+    {
+        ByteBuffer hb=ByteBuffer.allocate(AnubisHeader.HEADER_SIZE);
+        while(hb.hasRemaining())
+            if(in.read(hb, hb.position()) < 0)
+                throw new EOFException("Unexpected end of file in Anubis header");
+        long size=legacySize(new AnubisHeader(hb.array()));
+        long inSize=legacyLength(size);
+        if(in.size() < AnubisHeader.HEADER_SIZE+inSize)
+            throw new EOFException("Anubis file truncated, "+(AnubisHeader.HEADER_SIZE+inSize)+" bytes expected");
+        byte[] block=new byte[BLOCK_SIZE];
+        for(long pos=0; pos < size; pos+=MAP_WINDOW)
+        {
+            int length=(int )Math.min(MAP_WINDOW, size-pos);
+            int rounded=roundSize(length);
+            ByteBuffer src=in.map(FileChannel.MapMode.READ_ONLY, AnubisHeader.HEADER_SIZE+pos, rounded);
+            ByteBuffer dst=out.map(FileChannel.MapMode.READ_WRITE, pos, length);
+            int blocks=length/BLOCK_SIZE;
+            cryptBlocks(src, dst, blocks, false);
+            if(rounded > length) //padded tail block
+            {
+                int done=blocks*BLOCK_SIZE;
+                decryptBlocks(src, done, ByteBuffer.wrap(block), 0, 1);
+                for(int i=done; i < length; i++)
+                    dst.put(i, block[i-done]);
+            }
         }
-        while(rsize==BLOCK_SIZE && pos < size);
+        Arrays.fill(block, (byte )0);
+        if(out.size() > size)
+            out.truncate(size);
+    }
+
+    /**
+     * Encrypts or decrypts first nBlocks of src into dst, split across worker threads.
+     * Mapped buffers are copied through CHUNK_SIZE heap chunks, the byte array bulk path
+     * is much faster than int access to direct buffers
+     */
+    private void cryptBlocks(final ByteBuffer src, final ByteBuffer dst, int nBlocks, final boolean encrypt)
+    {
+        int parts=Parallel.parts(nBlocks*(long )BLOCK_SIZE, PARALLEL_BYTES);
+        Runnable[] tasks=new Runnable[parts];
+        for(int p=0; p < parts; p++)
+        {
+            final int from=(int )((long )nBlocks*p/parts)*BLOCK_SIZE;
+            final int to=(int )((long )nBlocks*(p+1)/parts)*BLOCK_SIZE;
+            tasks[p]=new Runnable()
+            {
+                public void run()
+                {
+                    ByteBuffer in=src.duplicate(), out=dst.duplicate();
+                    in.position(from);
+                    out.position(from);
+                    byte[] chunk=new byte[Math.min(CHUNK_SIZE, to-from)];
+                    for(int pos=from; pos < to; pos+=chunk.length)
+                    {
+                        int length=Math.min(chunk.length, to-pos);
+                        in.get(chunk, 0, length);
+                        if(encrypt)
+                            encryptBlocks(chunk, 0, chunk, 0, length/BLOCK_SIZE);
+                        else
+                            decryptBlocks(chunk, 0, chunk, 0, length/BLOCK_SIZE);
+                        out.put(chunk, 0, length);
+                    }
+                    Arrays.fill(chunk, (byte )0);
+                }
+            };
+        }
+        Parallel.invokeAll(tasks);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+            channel.write(buffer, position+buffer.position());
     }
 
     public static void testRNG()
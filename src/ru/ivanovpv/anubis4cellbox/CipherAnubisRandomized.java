@@ -25,29 +25,45 @@ final public class CipherAnubisRandomized extends Cipher
     private Anubis anubis;
     private static final int BLOCK_SIZE=16; //no more than 16 bytes!
     private static final int KEY_SIZE=40; //320 bits
+    private static final int MAX_LENGTH=1024*1024; //format limit, longer buffers are refused on decryption
+    private int messageLength=0; //length of incremental message so far
 
 
     public CipherAnubisRandomized(byte[] key)
+    {
+        this(key, null);
+    }
+
+    /**
+     * @param key 320-bit key
+     * @param cache cache of expanded key schedules, null expands key here
+     */
+    public CipherAnubisRandomized(byte[] key, AnubisKeyCache cache)
     {
         r=new R250RNG();
-        anubis = new Anubis();
-        anubis.keySetup(key);
+        anubis = AnubisKeyCache.getAnubis(cache, key);
     }
 
     public CipherAnubisRandomized(String password)
     {
-        r=new R250RNG();
-        byte[] digest=generateDigest(password, DIGEST_WHIRLPOOL, KEY_SIZE);
-        anubis = new Anubis();
-        anubis.keySetup(digest);
+        this(password, DIGEST_WHIRLPOOL, null);
     }
 
     public CipherAnubisRandomized(String password, int type)
+    {
+        this(password, type, null);
+    }
+
+    /**
+     * @param password password used to generate key
+     * @param type keygen algorythm either SHA1 or WHIRLPOOL
+     * @param cache cache of expanded key schedules, null expands key here
+     */
+    public CipherAnubisRandomized(String password, int type, AnubisKeyCache cache)
     {
         r=new R250RNG();
         byte[] digest=generateDigest(password, type, KEY_SIZE);
-        anubis = new Anubis();
-        anubis.keySetup(digest);
+        anubis = AnubisKeyCache.getAnubis(cache, digest);
     }
 
     private int getRandomPosition()
@@ -63,44 +79,107 @@ final public class CipherAnubisRandomized extends Cipher
 
     /**
      * Anubis encryption method. buffer will be rounded/padded in accordance with Anubis block size (16 bytes)
-     * @param buffer byte array to be encrypted. Attention! Not guaranteed that array will not be modified
+     * @param buffer byte array to be encrypted, not modified
      * @return encrypted byte array
      */
     @Override
     public final byte[] encrypt(byte[] buffer)
     {
-        byte[] buf=new byte[BLOCK_SIZE];
-        buffer=randomizeBuffer(buffer);
-        for(int i=0; i < buffer.length; i+=BLOCK_SIZE)
-        {
-            System.arraycopy(buffer, i, buf, 0, BLOCK_SIZE);
-            anubis.encrypt(buf);
-            System.arraycopy(buf, 0, buffer, i, BLOCK_SIZE);
-        }
-        return buffer;
+        byte[] out=new byte[getOutputSize(buffer.length)];
+        encrypt(buffer, 0, buffer.length, out, 0);
+        return out;
     }
 
     /**
      * Anubis decryption method
-     * Method doesn't check non-zero renundancy for Anubis block size (16 bytes). E.g. if buffer length will be 22 bytes
-     * then only 16 bytes will be decrypted, rest of array will remain untouched
-     * @param buffer byte array to be decrypted. Array content will be modified.
+     * @param buffer byte array to be decrypted, not modified
      * @return  decrypted byte array
      */
     @Override
     public final byte[] decrypt(byte[] buffer)
     {
-        int len=buffer.length-BLOCK_SIZE;
-        byte[] buf=new byte[BLOCK_SIZE];
-        for(int i=0; i <= len; i+=BLOCK_SIZE)
-        {
-            System.arraycopy(buffer, i, buf, 0, BLOCK_SIZE);
-            anubis.decrypt(buf);
-            System.arraycopy(buf, 0, buffer, i, BLOCK_SIZE);
-        }
-        return deRandomizeBuffer(buffer);
+        byte[] out=new byte[buffer.length];
+        int length=decrypt(buffer, 0, buffer.length, out, 0);
+        byte[] buf=new byte[length];
+        System.arraycopy(out, 0, buf, 0, length);
+        return buf;
+    }
+
+    /**
+     * @param length data length
+     * @return size of randomized buffer: header, random values and data rounded up to Anubis block size
+     */
+    @Override
+    public final int getOutputSize(int length)
+    {
+        int size=8+length/BLOCK_SIZE+length;
+        return BLOCK_SIZE*(size/BLOCK_SIZE) + BLOCK_SIZE*((size%BLOCK_SIZE==0)?0:1);
+    }
+
+    /**
+     * Randomizes and encrypts data without allocations.
+     * in and out may be the same array at the same offset
+     * @param in buffer holding data to be encrypted, not modified unless it is out
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving encrypted data, has to have room for getOutputSize(len) bytes
+     * @param outOff offset of encrypted data in out
+     * @return number of bytes written into out
+     */
+    @Override
+    public final int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        int size=randomizeBuffer(in, inOff, len, out, outOff);
+        anubis.encryptBlocks(out, outOff, out, outOff, size/BLOCK_SIZE);
+        return size;
+    }
+
+    /**
+     * Decrypts and derandomizes data without allocations.
+     * in and out may be the same array at the same offset, other overlapping regions get corrupted
+     * @param in buffer holding data to be decrypted, not modified unless it is out
+     * @param inOff offset of data in in
+     * @param len length of data
+     * @param out buffer receiving decrypted data, has to have room for len bytes
+     * @param outOff offset of decrypted data in out
+     * @return number of bytes written into out
+     */
+    @Override
+    public final int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        int blocks=len/BLOCK_SIZE;
+        anubis.decryptBlocks(in, inOff, out, outOff, blocks);
+        return deRandomizeBuffer(out, outOff, blocks*BLOCK_SIZE);
+    }
+
+    /**
+     * Incremental encryption/decryption. Randomized format starts with length of whole message and
+     * spreads random values over it, so nothing can be output before doFinal: message is buffered
+     * (at most 1 MB, the format limit) and processed at once
+     * @return 0, all output comes from doFinal
+     */
+    @Override
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        checkMode();
+        int limit=(getMode()==ENCRYPT_MODE) ? MAX_LENGTH : getOutputSize(MAX_LENGTH);
+        if(len > limit-messageLength)
+            throw new RuntimeException("Randomized message can't be longer than "+MAX_LENGTH+" bytes");
+        messageLength+=len;
+        return super.update(in, inOff, len, out, outOff);
     }
 
+    @Override
+    protected void reset()
+    {
+        super.reset();
+        messageLength=0;
+    }
+
+    /**
+     * Wipes key schedule of this cipher. A schedule cached in AnubisKeyCache outlives it,
+     * remove the key from the cache too
+     */
     @Override
     public void clean()
     {
@@ -115,66 +194,64 @@ final public class CipherAnubisRandomized extends Cipher
 
 
     /**
-     * Gets back randomized buffer (RB)
-     * @param buffer input byte array
-     * @return randomized byte array (always new buffer)
+     * Writes randomized buffer (RB): length, seed position, random values, data with values xored in, padding
+     * @param in input data, not modified unless it is out
+     * @param inOff offset of data
+     * @param length length of data
+     * @param out receives randomized buffer, may be in
+     * @param outOff offset of randomized buffer
+     * @return size of randomized buffer
      */
-    private byte[] randomizeBuffer(byte[] buffer)
+    private int randomizeBuffer(byte[] in, int inOff, int length, byte[] out, int outOff)
     {
-        int length=buffer.length;
-        byte[] val=new byte[length/BLOCK_SIZE];//1 random byte for each block
+        int vals=length/BLOCK_SIZE;//1 random byte for each block
+        int size=getOutputSize(length); //rounded buffer size including padding bytes
+        if(out.length-outOff < size)
+            throw new ArrayIndexOutOfBoundsException(outOff+size);
+        int data=outOff+8+vals;
+        System.arraycopy(in, inOff, out, data, length); //moves data first, so in and out may overlap
         int seedPosition=this.getRandomPosition(); //position of 1st random value
         int pos=0;
-        for(int i=0; i < val.length; i++)
+        for(int i=0; i < vals; i++)
         {
-            val[i]=this.getRandomVal();
+            byte val=this.getRandomVal();
+            out[outOff+8+i]=val;
             pos=pos+(seedPosition+i)%BLOCK_SIZE; //shifting random vals positions
-            buffer[pos]^=val[i]; //xoring
-        }
-        int size=(8+val.length+buffer.length); //real length of RB
-        size=BLOCK_SIZE*(size/BLOCK_SIZE) + BLOCK_SIZE*((size%BLOCK_SIZE==0)?0:1); //rounded buffer size including padding bytes
-        byte[] buf=new byte[size];
-        //length of buffer
-        byte[] buftmp= ByteUtils.intToByteArray(length);
-        System.arraycopy(buftmp, 0, buf, 0, buftmp.length);
-        //seed position
-        buftmp=ByteUtils.intToByteArray(seedPosition);
-        System.arraycopy(buftmp, 0, buf, 4, buftmp.length);
-        //array of vals
-        System.arraycopy(val, 0, buf, 8, val.length);
-        //buffer
-        System.arraycopy(buffer, 0, buf, 8+val.length, buffer.length);
-        for(int i=8+val.length+buffer.length; i < size; i++)
-        {
-            buf[i]=this.getRandomVal();
-            break; //randomize only 1 byte of paddding
+            out[data+pos]^=val; //xoring
         }
-        return buf;
+        ByteUtils.intToByteArray(length, out, outOff); //length of buffer
+        ByteUtils.intToByteArray(seedPosition, out, outOff+4); //seed position
+        for(int i=data+length; i < outOff+size; i++)
+            out[i]=0;
+        if(data+length < outOff+size)
+            out[data+length]=this.getRandomVal(); //randomize only 1 byte of paddding
+        return size;
     }
 
     /**
-     * Gets back derandomized buffer (DRB)
-     * @param buffer input byte array
-     * @return randomized byte array
+     * Gets back derandomized buffer (DRB) in place
+     * @param buffer decrypted randomized buffer, receives data at offset
+     * @param offset offset of randomized buffer
+     * @param size size of randomized buffer
+     * @return length of data
      */
-    private byte[] deRandomizeBuffer(byte[] buffer)
+    private int deRandomizeBuffer(byte[] buffer, int offset, int size)
     {
-        int length=ByteUtils.byteArrayToInt(buffer, 0); //real length of buffer
-        if(length < 0 || length > 1024*1024) //can't be more than 1 megs or less than zero
+        int length=(size < 8) ? -1 : ByteUtils.byteArrayToInt(buffer, offset); //real length of buffer
+        if(length < 0 || length > 1024*1024 || 8+length/BLOCK_SIZE+length > size) //can't be more than 1 megs or less than zero
             throw new RuntimeException("Error derandomizing decryption buffer");
-        byte[] buf=new byte[length];
-        int seedPosition=ByteUtils.byteArrayToInt(buffer, 4); //random value position in 1st block
-        byte[] val=new byte[length/BLOCK_SIZE];
+        int seedPosition=ByteUtils.byteArrayToInt(buffer, offset+4); //random value position in 1st block
+        int vals=length/BLOCK_SIZE;
+        int data=offset+8+vals;
         int pos=0;
-        System.arraycopy(buffer, 8, val, 0, val.length); //getting random vals
-        System.arraycopy(buffer, 8+val.length, buf, 0, length); //getting actual buffer and cutting padding bytes
         //derandomize buffer
-        for(int i=0; i < val.length; i++)
+        for(int i=0; i < vals; i++)
         {
             pos=pos+(seedPosition+i)%BLOCK_SIZE; //calculate positions in blocks
-            buf[pos] ^= val[i];  //xoring
+            buffer[data+pos] ^= buffer[offset+8+i];  //xoring
         }
-        return buf;
+        System.arraycopy(buffer, data, buffer, offset, length); //getting actual buffer and cutting padding bytes
+        return length;
     }
 
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.Arrays;
+
+/**
+ * Deterministic authenticated Anubis (SIV mode, RFC 5297). Same key and same plaintext
+ * always give the same ciphertext, so encrypted chunks can be deduplicated without
+ * decrypting them; nothing but equality of plaintexts is revealed.
+ * Synthetic IV V=S2V(K1, associated data..., plaintext) is computed with CMAC, plaintext
+ * is encrypted in CTR mode under K2 starting at V (with bits 31 and 63 cleared).
+ * Ciphertext is V followed by encrypted plaintext, i.e. 16 bytes longer than plaintext.
+ * Costs two passes over plaintext (MAC then CTR). Not safe for concurrent use.
+ */
+public final class CipherAnubisSIV extends Cipher
+{
+    public static final int SIV_SIZE=16;
+    private static final int BLOCK_SIZE=16;
+    private static final int KEY_SIZE=40; //320 bits, each of K1 and K2
+    private static final byte[][] NO_DATA=new byte[0][];
+
+    private AnubisKey macKey;
+    private AnubisKey ctrKey;
+    private AnubisCMAC cmac;
+    private AnubisCTR ctr; //restarted at every synthetic IV
+    private final byte[] v=new byte[SIV_SIZE]; //synthetic IV
+    private final byte[] t=new byte[SIV_SIZE]; //recomputed synthetic IV on decryption
+    private final byte[] d=new byte[BLOCK_SIZE]; //S2V accumulator
+
+    /**
+     * @param key K1 (S2V key) followed by K2 (CTR key), both of the same valid Anubis key size
+     */
+    public CipherAnubisSIV(byte[] key)
+    {
+        setupKeys(key);
+    }
+
+    /**
+     * Default constructor uses Whirlpool keygen procedure, K1 and K2 are derived from password digest
+     * @param password password used to generate key
+     */
+    public CipherAnubisSIV(String password)
+    {
+        this(password, DIGEST_WHIRLPOOL);
+    }
+
+    /**
+     * Constructor with selectable keygen procedure, K1 and K2 are derived from password digest
+     * @param password password used to generate key
+     * @param type - selected keygen algorythm either SHA1 or WHIRLPOOL
+     */
+    public CipherAnubisSIV(String password, int type)
+    {
+        byte[] digest=generateDigest(password, type, KEY_SIZE);
+        //digest is at most 512 bits, stretch it to K1|K2 with Anubis-CTR keystream
+        byte[] key=new byte[2*KEY_SIZE];
+        new AnubisCTR(digest, new byte[BLOCK_SIZE]).process(key);
+        setupKeys(key);
+        Arrays.fill(key, (byte)0);
+        Arrays.fill(digest, (byte)0);
+    }
+
+    private void setupKeys(byte[] key)
+    {
+        int half=key.length/2;
+        if(key.length%8!=0 || half < 16 || half > 40)
+            throw new RuntimeException("Invalid SIV key size: "+(8*key.length)+" bits.");
+        byte[] k=new byte[half];
+        System.arraycopy(key, 0, k, 0, half);
+        macKey=new AnubisKey(k, true);
+        System.arraycopy(key, half, k, 0, half);
+        ctrKey=new AnubisKey(k, true);
+        Arrays.fill(k, (byte)0);
+        cmac=new AnubisCMAC(macKey);
+        ctr=new AnubisCTR(ctrKey, new byte[BLOCK_SIZE]);
+    }
+
+    /**
+     * Deterministic encryption
+     * @param buffer plaintext, not modified
+     * @return synthetic IV followed by ciphertext (always new buffer)
+     */
+    @Override
+    public byte[] encrypt(byte[] buffer)
+    {
+        return encrypt(buffer, NO_DATA);
+    }
+
+    /**
+     * Deterministic encryption with associated data, which is authenticated but not encrypted
+     * @param buffer plaintext, not modified
+     * @param associatedData header fields to bind to ciphertext, same ones are needed for decryption
+     * @return synthetic IV followed by ciphertext (always new buffer)
+     */
+    public byte[] encrypt(byte[] buffer, byte[]... associatedData)
+    {
+        byte[] out=new byte[SIV_SIZE+buffer.length];
+        encrypt(associatedData, buffer, 0, buffer.length, out, 0);
+        return out;
+    }
+
+    /**
+     * Decryption and authentication check
+     * @param buffer synthetic IV followed by ciphertext, not modified
+     * @return plaintext (always new buffer)
+     * @throws RuntimeException if buffer was tampered with or key is wrong
+     */
+    @Override
+    public byte[] decrypt(byte[] buffer)
+    {
+        return decrypt(buffer, NO_DATA);
+    }
+
+    /**
+     * Decryption and authentication check with associated data
+     * @param buffer synthetic IV followed by ciphertext, not modified
+     * @param associatedData header fields used for encryption
+     * @return plaintext (always new buffer)
+     * @throws RuntimeException if buffer or associated data was tampered with or key is wrong
+     */
+    public byte[] decrypt(byte[] buffer, byte[]... associatedData)
+    {
+        if(buffer.length < SIV_SIZE)
+            throw new RuntimeException("SIV ciphertext too short: "+buffer.length+" bytes.");
+        byte[] plain=new byte[buffer.length-SIV_SIZE];
+        decrypt(associatedData, buffer, 0, buffer.length, plain, 0);
+        return plain;
+    }
+
+    /**
+     * @param length plaintext length
+     * @return plaintext length plus synthetic IV
+     */
+    @Override
+    public int getOutputSize(int length)
+    {
+        return SIV_SIZE+length;
+    }
+
+    /**
+     * Deterministic encryption into caller supplied buffer, which has to have room for getOutputSize(len) bytes
+     * @return number of bytes written into out
+     */
+    @Override
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        return encrypt(NO_DATA, in, inOff, len, out, outOff);
+    }
+
+    /**
+     * Decryption and authentication check into caller supplied buffer, out region is wiped if check fails
+     * @return number of bytes written into out
+     */
+    @Override
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        return decrypt(NO_DATA, in, inOff, len, out, outOff);
+    }
+
+    private int encrypt(byte[][] associatedData, byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        if(out.length-outOff < SIV_SIZE+len)
+            throw new ArrayIndexOutOfBoundsException(outOff+SIV_SIZE+len);
+        s2v(associatedData, in, inOff, len, v);
+        System.arraycopy(in, inOff, out, outOff+SIV_SIZE, len); //in and out may overlap
+        System.arraycopy(v, 0, out, outOff, SIV_SIZE);
+        ctr(v).process(out, outOff+SIV_SIZE, out, outOff+SIV_SIZE, len);
+        Arrays.fill(v, (byte)0);
+        return SIV_SIZE+len;
+    }
+
+    private int decrypt(byte[][] associatedData, byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        if(len < SIV_SIZE)
+            throw new RuntimeException("SIV ciphertext too short: "+len+" bytes.");
+        int length=len-SIV_SIZE;
+        System.arraycopy(in, inOff, v, 0, SIV_SIZE);
+        System.arraycopy(in, inOff+SIV_SIZE, out, outOff, length); //in and out may overlap
+        ctr(v).process(out, outOff, out, outOff, length);
+        s2v(associatedData, out, outOff, length, t);
+        int diff=0;
+        for(int i=0; i < SIV_SIZE; i++)
+            diff|=v[i]^t[i];
+        Arrays.fill(v, (byte)0);
+        Arrays.fill(t, (byte)0);
+        if(diff!=0)
+        {
+            Arrays.fill(out, outOff, outOff+length, (byte)0);
+            throw new RuntimeException("SIV authentication failed.");
+        }
+        return length;
+    }
+
+    /**
+     * CTR engine restarted at synthetic IV with bits 31 and 63 cleared
+     */
+    private AnubisCTR ctr(byte[] v)
+    {
+        System.arraycopy(v, 0, d, 0, BLOCK_SIZE);
+        d[8]&=0x7f;
+        d[12]&=0x7f;
+        ctr.reset(d);
+        Arrays.fill(d, (byte)0);
+        return ctr;
+    }
+
+    /**
+     * S2V: CMAC-based PRF over a vector of strings, last one being plaintext
+     */
+    private void s2v(byte[][] associatedData, byte[] plain, int off, int len, byte[] siv)
+    {
+        cmac.reset();
+        Arrays.fill(d, (byte)0);
+        cmac.update(d, 0, BLOCK_SIZE);
+        cmac.doFinal(d, 0);
+        for(int i=0; i < associatedData.length; i++)
+        {
+            AnubisCMAC.dbl(d, d);
+            cmac.update(associatedData[i], 0, associatedData[i].length);
+            cmac.doFinal(siv, 0); //siv is free until the end, holds the string MAC
+            for(int j=0; j < BLOCK_SIZE; j++)
+                d[j]^=siv[j];
+        }
+        if(len >= BLOCK_SIZE) //xorend
+        {
+            cmac.update(plain, off, len-BLOCK_SIZE);
+            for(int j=0; j < BLOCK_SIZE; j++)
+                d[j]^=plain[off+len-BLOCK_SIZE+j];
+        }
+        else //dbl and pad
+        {
+            AnubisCMAC.dbl(d, d);
+            for(int j=0; j < len; j++)
+                d[j]^=plain[off+j];
+            d[len]^=(byte)0x80;
+        }
+        cmac.update(d, 0, BLOCK_SIZE);
+        cmac.doFinal(siv, 0);
+        Arrays.fill(d, (byte)0);
+    }
+
+    @Override
+    public void clean()
+    {
+        cmac.clean();
+        ctr.clean();
+        macKey.clean();
+        ctrKey.clean();
+    }
+
+    @Override
+    public int getCipherType()
+    {
+        return 3;
+    }
+}
@@ -46,6 +46,53 @@ public class CipherEmpty extends Cipher
         return buffer;
     }
 
+    @Override
+    public int getOutputSize(int length)
+    {
+        return length;
+    }
+
+    @Override
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        System.arraycopy(in, inOff, out, outOff, len);
+        return len;
+    }
+
+    @Override
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        System.arraycopy(in, inOff, out, outOff, len);
+        return len;
+    }
+
+    @Override
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff)
+    {
+        checkMode();
+        System.arraycopy(in, inOff, out, outOff, len);
+        return len;
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff)
+    {
+        checkMode();
+        return 0;
+    }
+
+    @Override
+    public int getUpdateOutputSize(int len)
+    {
+        return len;
+    }
+
+    @Override
+    public int getFinalOutputSize()
+    {
+        return 0;
+    }
+
     @Override
     public void clean()
     {
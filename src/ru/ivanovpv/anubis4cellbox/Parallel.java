@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2011 Pavel Ivanov (ivanovpv@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package ru.ivanovpv.anubis4cellbox;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared pool of daemon worker threads for splitting bulk work into independent parts.
+ * Tasks submitted from a worker thread run inline, so nested use never deadlocks.
+ */
+final class Parallel
+{
+    static final int THREADS=Runtime.getRuntime().availableProcessors();
+    private static ExecutorService executor;
+
+    private Parallel()
+    {
+    }
+
+    private static final class Worker extends Thread
+    {
+        Worker(Runnable r, int n)
+        {
+            super(r, "anubis-worker-"+n);
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * @return shared executor, created on first use
+     */
+    static synchronized ExecutorService getExecutor()
+    {
+        if(executor==null)
+        {
+            executor=Executors.newFixedThreadPool(THREADS, new ThreadFactory()
+            {
+                private int count=0;
+
+                public synchronized Thread newThread(Runnable r)
+                {
+                    return new Worker(r, ++count);
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Number of parts worth splitting work of given size into
+     * @param units amount of work
+     * @param minUnits smallest amount of work worth a separate task
+     * @return number of parts, 1 means do it on the calling thread
+     */
+    static int parts(long units, long minUnits)
+    {
+        if(THREADS<2 || Thread.currentThread() instanceof Worker)
+            return 1;
+        return (int)Math.max(1, Math.min(THREADS, units/minUnits));
+    }
+
+    /**
+     * Run all tasks and wait for them to complete. The first task runs on the calling thread.
+     * @param tasks independent tasks
+     */
+    static void invokeAll(Runnable[] tasks)
+    {
+        if(tasks.length==1 || Thread.currentThread() instanceof Worker)
+        {
+            for(int i=0; i<tasks.length; i++)
+                tasks[i].run();
+            return;
+        }
+        ExecutorService pool=getExecutor();
+        Future<?>[] futures=new Future<?>[tasks.length];
+        for(int i=1; i<tasks.length; i++)
+            futures[i]=pool.submit(tasks[i]);
+        RuntimeException failure=null;
+        try
+        {
+            tasks[0].run();
+        }
+        catch(RuntimeException ex)
+        {
+            failure=ex;
+        }
+        boolean interrupted=false;
+        for(int i=1; i<tasks.length; i++)
+        {
+            while(true)
+            {
+                try
+                {
+                    futures[i].get();
+                    break;
+                }
+                catch(InterruptedException ex)
+                {
+                    interrupted=true;
+                }
+                catch(ExecutionException ex)
+                {
+                    Throwable cause=ex.getCause();
+                    if(cause instanceof Error)
+                        throw (Error)cause;
+                    if(failure==null)
+                        failure=(cause instanceof RuntimeException) ? (RuntimeException)cause : new RuntimeException(cause);
+                    break;
+                }
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+        if(failure!=null)
+            throw failure;
+    }
+}